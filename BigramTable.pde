@@ -0,0 +1,63 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Counts of the word pairs that follow each other in the lesson text, by
+// distinct word. The successors of word w, without repetitions, are
+// successors[successorStart[w]] to successors[successorStart[w + 1] - 1],
+// each with how many times it follows w in counts.
+public class BigramTable {
+  int[] successorStart;
+  int[] successors;
+  int[] counts;
+
+  BigramTable(Dictionary dictionary) {
+    int wordCount = dictionary.wordCount;
+    int pairCount = max(0, dictionary.size() - 1);
+
+    // Bucket the successor of each lesson word by its predecessor
+    successorStart = new int[wordCount + 1];
+    for (int i = 0; i < pairCount; i++) successorStart[dictionary.getWordId(i) + 1]++;
+    for (int w = 0; w < wordCount; w++) successorStart[w + 1] += successorStart[w];
+    int[] next = Arrays.copyOf(successorStart, wordCount);
+    int[] pairs = new int[pairCount];
+    for (int i = 0; i < pairCount; i++) pairs[next[dictionary.getWordId(i)]++] = dictionary.getWordId(i + 1);
+
+    // Sort each bucket and merge repeated successors into counts
+    successors = new int[pairCount];
+    counts = new int[pairCount];
+    int size = 0;
+    for (int w = 0; w < wordCount; w++) {
+      int from = successorStart[w];
+      int to = successorStart[w + 1];
+      successorStart[w] = size;
+      Arrays.sort(pairs, from, to);
+      for (int i = from; i < to; i++) {
+        if (i > from && pairs[i] == pairs[i - 1]) {
+          counts[size - 1]++;
+        } else {
+          successors[size] = pairs[i];
+          counts[size++] = 1;
+        }
+      }
+    }
+    successorStart[wordCount] = size;
+    successors = Arrays.copyOf(successors, size);
+    counts = Arrays.copyOf(counts, size);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Chooses the word following the previous one among the words that follow
+// it in the lesson text, so that practice of prose lessons reads like the
+// text. A successor is weighted by how often it follows the previous word
+// times its penalty weight, from 1 to 100 like with the penalty selector.
+// Now and then, and whenever no active word follows the previous one, the
+// word is chosen by penalty alone, so that every active word keeps coming
+// up.
+//
+// Transitions are between distinct words, while the words that are shown
+// are lesson indices: a successor is shown as its first active occurrence.
+// Blacklisting deactivates every occurrence of a word at once.
+public class BigramWordSelector implements WordSelector {
+  // Chance of choosing by penalty alone
+  double jumpChance = 0.15;
+
+  BigramTable bigrams;
+  PenaltyWordSelector penaltySelector;
+  SplittableRandom random;
+
+  // First active occurrence of each distinct word, -1 if none
+  int[] occurrences;
+
+  BigramWordSelector(int size, SplittableRandom random) {
+    bigrams = new BigramTable(dictionary);
+    penaltySelector = new PenaltyWordSelector(size, random.split());
+    this.random = random;
+    occurrences = new int[dictionary.wordCount];
+    Arrays.fill(occurrences, -1);
+  }
+
+  public void activate(int word) {
+    penaltySelector.activate(word);
+    int id = dictionary.getWordId(word);
+    if (occurrences[id] < 0 || word < occurrences[id]) occurrences[id] = word;
+  }
+
+  public void deactivate(int word) {
+    penaltySelector.deactivate(word);
+    int id = dictionary.getWordId(word);
+    if (occurrences[id] == word) occurrences[id] = -1;
+  }
+
+  public void update(int word) {
+    penaltySelector.update(word);
+  }
+
+  public boolean isActive(int word) {
+    return penaltySelector.isActive(word);
+  }
+
+  public int next(int previousWord) {
+    if (previousWord < 0 || previousWord >= dictionary.size() || random.nextDouble() < jumpChance) {
+      return penaltySelector.next(previousWord);
+    }
+    long minPenalty = penaltySelector.sampler.minPenalty();
+    double scale = 99 / (double) Math.max(1L, penaltySelector.sampler.maxPenalty() - minPenalty);
+    int previousId = dictionary.getWordId(previousWord);
+    int from = bigrams.successorStart[previousId];
+    int to = bigrams.successorStart[previousId + 1];
+
+    // Sum the weights of the active successors, then walk them again to
+    // the chosen one
+    double totalWeight = 0;
+    for (int i = from; i < to; i++) totalWeight += weight(i, previousId, minPenalty, scale);
+    if (totalWeight == 0) return penaltySelector.next(previousWord);
+    double target = random.nextDouble() * totalWeight;
+    int chosen = -1;
+    for (int i = from; i < to; i++) {
+      double weight = weight(i, previousId, minPenalty, scale);
+      if (weight == 0) continue;
+      chosen = i;
+      target -= weight;
+      if (target < 0) break;
+    }
+    return occurrences[bigrams.successors[chosen]];
+  }
+
+  // Weight of the given successor entry, 0 if the word is not active or
+  // is the previous word
+  double weight(int entry, int previousId, long minPenalty, double scale) {
+    int id = bigrams.successors[entry];
+    int word = occurrences[id];
+    if (word < 0 || id == previousId) return 0;
+    return bigrams.counts[entry] * (1 + scale * (wordStats.getWordPenalty(word) - minPenalty));
+  }
+}
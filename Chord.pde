@@ -0,0 +1,116 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Chords are stored as an int with one bit per steno key. Bit i stands for the
+// i-th key of stenoOrder: # S- T- K- P- W- H- R- A- O- * -E -U -F -R -P -B -L -G -T -S -D -Z
+// Outlines of multiple strokes are stored as int[] of chords.
+final String stenoOrder = "#STKPWHRAO*EUFRPBLGTSDZ";
+final int numberKey = 0;
+final int firstRightKey = 13;
+final int middleKeysMask = 0x1F << 8; // A O * E U
+final int starChord = 1 << 10;
+
+// Keys written as digits when the number key is pressed, indexed by digit
+final int[] digitKeys = {9, 1, 2, 4, 6, 8, 13, 15, 17, 19};
+final int digitKeysMask = 0xAA356;
+
+// Return the index of the steno key written as c, looking only at the keys
+// from fromKey on, or -1 if there is none. A digit stands for its key.
+int stenoKeyIndex(int c, int fromKey) {
+  if (c >= '0' && c <= '9') {
+    int key = digitKeys[c - '0'];
+    return key >= fromKey ? key : -1;
+  }
+  for (int key = fromKey; key < stenoOrder.length(); key++) {
+    if (stenoOrder.charAt(key) == c) return key;
+  }
+  return -1;
+}
+
+// Parse a chord written in Plover notation, like "KP-PB" or "1-9".
+// Returns -1 if it is not a valid chord.
+int parseChord(String text, int start, int end) {
+  int chord = 0;
+  int nextKey = 0;
+  for (int i = start; i < end; i++) {
+    char c = text.charAt(i);
+    if (c == '-') {
+      nextKey = max(nextKey, firstRightKey);
+      continue;
+    }
+    int key = stenoKeyIndex(c, nextKey);
+    if (key < 0) return -1;
+    if (c >= '0' && c <= '9') chord |= 1 << numberKey;
+    chord |= 1 << key;
+    nextKey = key + 1;
+  }
+  return chord;
+}
+
+// Parse an outline of chords separated by '/', like "HEL/HRO".
+// Returns null if any of the chords is not valid.
+int[] parseOutline(String text) {
+  int[] outline = new int[utils.countOccurences(text, '/') + 1];
+  int start = 0;
+  for (int i = 0; i < outline.length; i++) {
+    int end = text.indexOf('/', start);
+    if (end < 0) end = text.length();
+    outline[i] = parseChord(text, start, end);
+    if (outline[i] < 0) return null;
+    start = end + 1;
+  }
+  return outline;
+}
+
+// Format a chord in Plover notation
+String formatChord(int chord) {
+  StringBuilder result = new StringBuilder();
+  boolean numbers = (chord & (1 << numberKey)) != 0;
+  boolean digits = numbers && (chord & digitKeysMask) != 0;
+  if (numbers && !digits) result.append('#');
+  boolean hyphen = (chord & middleKeysMask) == 0;
+  for (int key = 1; key < stenoOrder.length(); key++) {
+    if ((chord & (1 << key)) == 0) continue;
+    if (hyphen && key >= firstRightKey) {
+      result.append('-');
+      hyphen = false;
+    }
+    char c = stenoOrder.charAt(key);
+    if (digits && (digitKeysMask & (1 << key)) != 0) {
+      for (int digit = 0; digit < digitKeys.length; digit++) {
+        if (digitKeys[digit] == key) c = (char) ('0' + digit);
+      }
+    }
+    result.append(c);
+  }
+  return result.toString();
+}
+
+// Last formatted chord, as the same one is usually shown for many frames in a row
+int lastFormattedChord = -1;
+String lastFormattedChordText = "";
+
+// Format a chord in Plover notation, reusing the last result if possible
+String chordText(int chord) {
+  if (chord != lastFormattedChord) {
+    lastFormattedChord = chord;
+    lastFormattedChordText = formatChord(chord);
+  }
+  return lastFormattedChordText;
+}
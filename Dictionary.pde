@@ -18,34 +18,191 @@
  *   This source file created 2017 David Rutter.
  */
 
-// This class manages the dictionary of lesson word objects. Mostly just an arraylist wrapper but maybe not forever.
+// This class holds the lesson words and their outlines. Words and chords are
+// kept in flat arrays rather than in an object per word, so that lessons of
+// hundreds of thousands of words load fast and take little memory. A word
+// repeated in the lesson, like in prose lessons, is stored once.
 public class Dictionary {
+  // Category flags of an outline
+  final int BRIEF = 1;
+  final int MISSTROKE = 2;
+
+  // Lesson words in lesson order, as indices into the distinct words
+  int[] lessonWords = new int[16];
+  int size = 0;
+
+  // Distinct words of the lesson
+  String[] words = new String[16];
+  int wordCount = 0;
+
+  // Outlines of distinct word w are outlineStart[w] to outlineStart[w + 1] - 1,
+  // chords of outline o are chords[chordStart[o]] to chords[chordStart[o + 1] - 1]
+  int[] outlineStart = new int[17];
+  int[] chordStart = new int[17];
+  int[] chords = new int[16];
+  int outlineCount = 0;
+  int chordCount = 0;
+  int[] outlineFlags = new int[16];
+
+  // Ranking of each outline, lower is better: fewest strokes first,
+  // preferring briefs and avoiding misstrokes, then fewest keys
+  int[] outlineRanks;
+
+  // Key of each lesson word, see Utils.wordKey()
+  long[] lessonKeys;
 
-  private ArrayList<Word> dictionary;
   private final String categoryPath = sketchPath("/data/incategory.json");
-    
-  public Word get(int index) {
-    return dictionary.get(index);
+
+  // Word at the given lesson index
+  public String getWord(int index) {
+    return words[lessonWords[index]];
+  }
+
+  // Key the stats of the word at the given lesson index are stored by
+  public long getWordKey(int index) {
+    return lessonKeys[index];
+  }
+
+  // Index of the given lesson word among the distinct words, the same for
+  // every occurrence of the word
+  public int getWordId(int index) {
+    return lessonWords[index];
+  }
+
+  public int getOutlineCount(int index) {
+    int word = lessonWords[index];
+    return outlineStart[word + 1] - outlineStart[word];
   }
 
   public int size() {
-    return dictionary.size();
+    return size;
   }
 
-// Build dictionary from lesson word list and plover dictionary
-  public Dictionary(String lesDictionaryFilePath, String mainDictionaryFilePath, String userDictionaryFilePath, boolean debug) {
+// Load dictionary from the compiled lesson dictionary, or build it from lesson word list
+// and plover dictionary if any of them changed since it was compiled
+  public Dictionary(String lesDictionaryFilePath, String mainDictionaryFilePath, String userDictionaryFilePath, String chdDictionaryFilePath, boolean debug) {
+    long startTime = System.currentTimeMillis();
+    DictionaryCache cache = new DictionaryCache(chdDictionaryFilePath, new String[] {lesDictionaryFilePath, mainDictionaryFilePath, userDictionaryFilePath, categoryPath});
+    if (cache.load(this)) {
+      rankOutlines();
+      keyLessonWords();
+      if (debug) {
+        println("Current lesson contains " + size + " words (" + wordCount + " distinct), read from compiled dictionary in " + (System.currentTimeMillis() - startTime) + " ms.");
+      }
+    } else {
+      clear();
+      build(lesDictionaryFilePath, mainDictionaryFilePath, userDictionaryFilePath, debug);
+      cache.save(this);
+      rankOutlines();
+      keyLessonWords();
+      if (debug) {
+        println("Lesson dictionary built in " + (System.currentTimeMillis() - startTime) + " ms.");
+      }
+    }
+  }
+
+  // Forget the words, like after reading a broken compiled dictionary
+  void clear() {
+    size = 0;
+    wordCount = 0;
+    outlineCount = 0;
+    chordCount = 0;
+    outlineStart[0] = 0;
+    chordStart[0] = 0;
+  }
+
+  // Append a word to the lesson, given its index among the distinct words
+  void addLessonWord(int word) {
+    if (size == lessonWords.length) lessonWords = Arrays.copyOf(lessonWords, size * 2);
+    lessonWords[size++] = word;
+  }
+
+  // Start a new distinct word. Its outlines are the ones added next.
+  void addWord(String word) {
+    if (wordCount == words.length) {
+      words = Arrays.copyOf(words, wordCount * 2);
+      outlineStart = Arrays.copyOf(outlineStart, wordCount * 2 + 1);
+    }
+    words[wordCount++] = word;
+    outlineStart[wordCount] = outlineCount;
+  }
+
+  // Add an outline to the last distinct word
+  void addOutline(int[] outline, int flags) {
+    if (outlineCount == outlineFlags.length) {
+      outlineFlags = Arrays.copyOf(outlineFlags, outlineCount * 2);
+      chordStart = Arrays.copyOf(chordStart, outlineCount * 2 + 1);
+    }
+    if (chordCount + outline.length > chords.length) {
+      chords = Arrays.copyOf(chords, max(chords.length * 2, chordCount + outline.length));
+    }
+    System.arraycopy(outline, 0, chords, chordCount, outline.length);
+    chordCount += outline.length;
+    outlineFlags[outlineCount++] = flags;
+    chordStart[outlineCount] = chordCount;
+    outlineStart[wordCount] = outlineCount;
+  }
+
+  // Flags of an outline of the given category
+  int categoryFlags(String category) {
+    int flags = 0;
+    if (category.indexOf("brief") >= 0) flags |= BRIEF;
+    if (category.indexOf("misstroke") >= 0) flags |= MISSTROKE;
+    return flags;
+  }
+
+  void rankOutlines() {
+    outlineRanks = new int[outlineCount];
+    for (int o = 0; o < outlineCount; o++) {
+      int strokes = chordStart[o + 1] - chordStart[o];
+      if ((outlineFlags[o] & BRIEF) != 0) strokes--;
+      if ((outlineFlags[o] & MISSTROKE) != 0) strokes++;
+      int keys = 0;
+      for (int c = chordStart[o]; c < chordStart[o + 1]; c++) keys += Integer.bitCount(chords[c]);
+      outlineRanks[o] = (strokes << 16) + keys;
+    }
+  }
+
+  void keyLessonWords() {
+    lessonKeys = new long[size];
+    int[] occurrences = new int[wordCount];
+    for (int i = 0; i < size; i++) {
+      int word = lessonWords[i];
+      lessonKeys[i] = utils.wordKey(words[word], occurrences[word]++);
+    }
+  }
+
+  //given the chords that have been input so far for the word at the given lesson index, return the best next chord to progress
+  //if there has already been a mistake (and no outline matches the current word), return the '*' chord
+  public int getBestChord(int index, int[] chordsofar, int chordcount) {
+    int word = lessonWords[index];
+    int best = -1;
+    for (int o = outlineStart[word]; o < outlineStart[word + 1]; o++) {
+      if (!startsWith(o, chordsofar, chordcount)) continue;
+      //the best candidate will use the fewest strokes and, of those with fewest strokes, have the fewest keys
+      if (best < 0 || outlineRanks[o] < outlineRanks[best]) best = o;
+    }
+    if (best < 0) return starChord;
+    //return just the next chord, or the last one if the outline is complete
+    return chords[min(chordStart[best] + chordcount, chordStart[best + 1] - 1)];
+  }
+
+  boolean startsWith(int outline, int[] prefix, int length) {
+    int start = chordStart[outline];
+    if (length > chordStart[outline + 1] - start) return false;
+    for (int i = 0; i < length; i++) {
+      if (chords[start + i] != prefix[i]) return false;
+    }
+    return true;
+  }
+
+// Build dictionary from lesson word list and plover dictionary. Throws a RuntimeException
+// if the plover dictionary could not be read.
+  void build(String lesDictionaryFilePath, String mainDictionaryFilePath, String userDictionaryFilePath, boolean debug) {
     String tempLine = null;
     BufferedReader lesReader = null;
-    ArrayList<String> words = new ArrayList<String>();
-    JSONArray categories = loadJSONArray(categoryPath);
+    ArrayList<String> lessonTokens = new ArrayList<String>();
     HashMap<String,String> catmap = new HashMap<String,String>();
-    for (int i=0;i<categories.size();i++) {
-      JSONArray stroak = categories.getJSONArray(i);
-      catmap.put(stroak.getString(1),stroak.getString(2));
-    }
-    dictionary = new ArrayList<Word>();
-    int chordcount = 0;
-
 
     // Read and store words
     try {
@@ -55,7 +212,7 @@ public class Dictionary {
         if (tempLine.length() != 0 && tempLine.charAt(0) == '<' || tempLine.trim().length() == 0) continue;
         String[] newWords = tempLine.split(" ");
         for (String word : newWords) {
-          words.add(word);
+          lessonTokens.add(word);
         }
       }
     }
@@ -69,52 +226,110 @@ public class Dictionary {
       catch (Exception e) {
       }
     }
-    HashMap<String,HashMap<String,String>> wordStrokeMap = new DefaultHashMap<String,HashMap<String,String>>(new HashMap<String,String>());
-    // Read and store strokes
+    // Read strokes. Only the ones translating to a lesson word are kept, so that
+    // memory and parse time depend on the lesson rather than on the whole dictionary.
+    StrokeMultimap wordStrokeMap = new StrokeMultimap(lessonTokens);
+    HashMap<String,String> strokeWords = new HashMap<String,String>();
     try {
-      
-      JSONObject jsonMap = loadJSONObject(mainDictionaryFilePath);
-      String[] strokeys = (String[]) jsonMap.keys().toArray(new String[jsonMap.size()]);
-      for (int i = 0; i < jsonMap.size(); i++) {
-        String word = jsonMap.getString(strokeys[i]);
-        wordStrokeMap.get(word).put(strokeys[i],catmap.containsKey(strokeys[i])?catmap.get(strokeys[i]):"unassigned");
-      }
+      readPloverDictionary(mainDictionaryFilePath, wordStrokeMap, strokeWords, false);
       File f = new File(userDictionaryFilePath);
       if (f.exists()) {
-        jsonMap = loadJSONObject(userDictionaryFilePath);
-        strokeys = (String[]) jsonMap.keys().toArray(new String[jsonMap.size()]);
-        for (int i = 0; i < jsonMap.size(); i++) {
-          String word = jsonMap.getString(strokeys[i]);
-          wordStrokeMap.get(word).put(strokeys[i],catmap.containsKey(strokeys[i])?catmap.get(strokeys[i]):"unassigned");
-        }
+        readPloverDictionary(userDictionaryFilePath, wordStrokeMap, strokeWords, true);
       }
-      
-      
-        
     }
     catch (Exception e) {
-      println("Error while reading plover dictionary file: " + e.getMessage());
-      exit();
+      // Nothing can be practiced without strokes. This runs on a startup
+      // thread, so setup() reports it and stops.
+      throw new RuntimeException("cannot read plover dictionary file: " + e.getMessage(), e);
+    }
+
+    // Read categories of the kept strokes
+    try {
+      readCategories(strokeWords, catmap);
+    }
+    catch (Exception e) {
+      println("Warning: cannot read stroke categories: " + e.getMessage());
+    }
+
+    for (Map.Entry<String,String> entry : strokeWords.entrySet()) {
+      String stroke = entry.getKey();
+      String category = catmap.get(stroke);
+      wordStrokeMap.add(entry.getValue(), stroke, category == null ? "unassigned" : category);
     }
 
-    // Store words and strokes in dictionary list
-    for (String w: words) {
-      HashMap<String,String> chords = wordStrokeMap.get(w);
-      if (chords.size()==0) {
+    // Store distinct words with their strokes, then the lesson words
+    for (int id = 0; id < wordStrokeMap.wordCount; id++) {
+      addWord(wordStrokeMap.words[id]);
+      wordStrokeMap.addOutlines(id, this);
+      if (outlineStart[id + 1] == outlineStart[id]) {
         //TODO: build strokes for words not in the dictionary using prefixes and suffixes and the like (as all said prefixes and suffixes must, at this point, be in the wordStrokeMap)
         //yes this seems like it should be hard since it is literally about trying to break apart English words into component pieces, but I believe the Plover dictionary has done
         //most of the dirty work of handling nasty edge cases
         //Fallback: just give the inputs for fingerspelling the "word" in question
       }
-      Word word = new Word(w,chords);
-      chordcount+=chords.size();
-      dictionary.add(word);
+    }
+    for (String w: lessonTokens) {
+      addLessonWord(wordStrokeMap.getWordId(w));
     }
 
     // Debug info
     if (debug) {
-      println("Current lesson contains " + words.size() + " words and " + chordcount + " chords.");
+      println("Current lesson contains " + size + " words (" + wordCount + " distinct) and " + outlineCount + " chords.");
+    }
+  }
+
+  // Stream a plover dictionary, a JSON object mapping strokes to translations, and store
+  // the strokes of the given words. A user dictionary overrides the strokes it redefines.
+  void readPloverDictionary(String filePath, StrokeMultimap words, HashMap<String,String> strokeWords, boolean overrides) throws IOException {
+    JsonTokenizer json = new JsonTokenizer(filePath);
+    StringBuilder stroke = new StringBuilder();
+    try {
+      int token = json.next();
+      if (token != '{') throw new IOException("Unexpected content in " + filePath);
+      token = json.next();
+      while (token == json.STRING) {
+        stroke.setLength(0);
+        stroke.append(json.text);
+        if (json.next() != ':' || json.next() != json.STRING) throw new IOException("Unexpected content in " + filePath);
+        String word = json.text.toString();
+        if (words.containsWord(word)) {
+          strokeWords.put(stroke.toString(), word);
+        } else if (overrides) {
+          strokeWords.remove(stroke.toString());
+        }
+        token = json.next();
+        if (token == ',') token = json.next();
+      }
+      if (token != '}') throw new IOException("Unexpected content in " + filePath);
+    }
+    finally {
+      json.close();
+    }
+  }
+
+  // Stream the category file, a JSON array of [word, stroke, category] arrays, and store
+  // the categories of the given strokes
+  void readCategories(HashMap<String,String> strokeWords, HashMap<String,String> catmap) throws IOException {
+    JsonTokenizer json = new JsonTokenizer(categoryPath);
+    String[] row = new String[3];
+    try {
+      if (json.next() != '[') throw new IOException("Unexpected content in " + categoryPath);
+      int token = json.next();
+      while (token == '[') {
+        int column = 0;
+        while ((token = json.next()) != ']') {
+          if (token == json.END) throw new IOException("Unexpected end of " + categoryPath);
+          if (token == json.STRING && column < row.length) row[column++] = json.text.toString();
+        }
+        if (column == row.length && strokeWords.containsKey(row[1])) {
+          catmap.put(row[1], row[2]);
+        }
+        token = json.next();
+        if (token == ',') token = json.next();
+      }
+    }
+    finally {
+      json.close();
     }
   }
-  
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.nio.MappedByteBuffer;
+import java.nio.file.StandardCopyOption;
+
+// Compiled lesson dictionary, stored in /data/lessons with the same name
+// of the corresponding lesson file but with .chd extension. It holds the
+// words of the lesson with their strokes and categories, so that the Plover
+// dictionaries don't have to be parsed again until one of them changes.
+//
+// Binary layout, big endian:
+//   int magic, int version
+//   int source count, then for each source: long size, long mtime, long crc32
+//   int distinct word count, then the distinct words as strings
+//   int outline count, then as ints the first outline of each distinct word
+//     and the outline count, the category flags of each outline, the first
+//     chord of each outline and the chord count
+//   int chord count, then the chords as ints
+//   int lesson word count, then the distinct word index of each lesson word
+// where each string is an unsigned short length followed by UTF-8 bytes.
+// Apart from the strings these are the arrays of the Dictionary as they are.
+// Files with a different magic, like the space separated chord lists of
+// older versions, are simply rebuilt.
+public class DictionaryCache {
+  final int magic = 0x53544344; // "STCD"
+  final int version = 3;
+
+  String cacheFilePath;
+  // Fingerprints of the files the dictionary is built from
+  long[] fingerprint;
+
+  DictionaryCache(String cacheFilePath, String[] sourceFilePaths) {
+    this.cacheFilePath = cacheFilePath;
+    fingerprint = new long[sourceFilePaths.length * 3];
+    for (int i = 0; i < sourceFilePaths.length; i++) {
+      File f = new File(sourceFilePaths[i]);
+      fingerprint[i * 3] = f.exists() ? f.length() : -1;
+      fingerprint[i * 3 + 1] = f.lastModified();
+      fingerprint[i * 3 + 2] = utils.checksum(f);
+    }
+  }
+
+  // Read the cached words into the given empty dictionary. Returns false if
+  // the cache is missing or stale.
+  boolean load(Dictionary dictionary) {
+    File f = new File(cacheFilePath);
+    if (!f.exists()) return false;
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+      // Check the header before mapping, so that a stale file is never
+      // mapped and can be replaced right away
+      int headerSize = 12 + fingerprint.length * 8;
+      if (channel.size() < headerSize + 4) return false;
+      ByteBuffer header = ByteBuffer.allocate(headerSize);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) break;
+      }
+      header.flip();
+      if (header.getInt() != magic || header.getInt() != version || header.getInt() * 3 != fingerprint.length) return false;
+      for (int i = 0; i < fingerprint.length; i++) {
+        if (header.getLong() != fingerprint[i]) return false;
+      }
+
+      MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, headerSize, channel.size() - headerSize);
+      int wordCount = data.getInt();
+      String[] words = new String[wordCount];
+      for (int i = 0; i < wordCount; i++) words[i] = readString(data);
+      int outlineCount = data.getInt();
+      int[] outlineStart = readInts(data, wordCount + 1);
+      int[] outlineFlags = readInts(data, outlineCount);
+      int[] chordStart = readInts(data, outlineCount + 1);
+      int chordCount = data.getInt();
+      int[] chords = readInts(data, chordCount);
+      int size = data.getInt();
+      int[] lessonWords = readInts(data, size);
+      if (outlineStart[wordCount] != outlineCount || chordStart[outlineCount] != chordCount) {
+        throw new IOException("inconsistent outline tables");
+      }
+      for (int i = 0; i < size; i++) {
+        if (lessonWords[i] < 0 || lessonWords[i] >= wordCount) throw new IOException("word index out of range");
+      }
+
+      dictionary.words = words;
+      dictionary.wordCount = wordCount;
+      dictionary.outlineStart = outlineStart;
+      dictionary.outlineFlags = outlineFlags;
+      dictionary.chordStart = chordStart;
+      dictionary.outlineCount = outlineCount;
+      dictionary.chords = chords;
+      dictionary.chordCount = chordCount;
+      dictionary.lessonWords = lessonWords;
+      dictionary.size = size;
+      return true;
+    }
+    catch (Exception e) {
+      println("Warning: cannot read compiled dictionary, rebuilding it. " + e.getMessage());
+      return false;
+    }
+    finally {
+      try {
+        if (channel != null) channel.close();
+      }
+      catch (IOException e) {
+      }
+    }
+  }
+
+  // Write the words of the given dictionary to the cache file. The file is
+  // written aside and then renamed, so that a half written cache is never read.
+  void save(Dictionary dictionary) {
+    File f = new File(cacheFilePath);
+    File temp = new File(cacheFilePath + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      out.writeInt(magic);
+      out.writeInt(version);
+      out.writeInt(fingerprint.length / 3);
+      for (long value : fingerprint) out.writeLong(value);
+      out.writeInt(dictionary.wordCount);
+      for (int i = 0; i < dictionary.wordCount; i++) writeString(out, dictionary.words[i]);
+      out.writeInt(dictionary.outlineCount);
+      writeInts(out, dictionary.outlineStart, dictionary.wordCount + 1);
+      writeInts(out, dictionary.outlineFlags, dictionary.outlineCount);
+      writeInts(out, dictionary.chordStart, dictionary.outlineCount + 1);
+      out.writeInt(dictionary.chordCount);
+      writeInts(out, dictionary.chords, dictionary.chordCount);
+      out.writeInt(dictionary.size);
+      writeInts(out, dictionary.lessonWords, dictionary.size);
+      out.close();
+      out = null;
+      Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException e) {
+      println("Warning: cannot write compiled dictionary: " + e.getMessage());
+    }
+    finally {
+      try {
+        if (out != null) out.close();
+      }
+      catch (IOException e) {
+      }
+      temp.delete();
+    }
+  }
+
+  int[] readInts(ByteBuffer buffer, int count) {
+    int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + count * 4);
+    return values;
+  }
+
+  void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+    for (int i = 0; i < count; i++) out.writeInt(values[i]);
+  }
+
+  String readString(ByteBuffer buffer) {
+    int length = buffer.getShort() & 0xFFFF;
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Minimal streaming JSON tokenizer, enough to walk the Plover dictionaries
+// one entry at a time instead of building the whole document in memory.
+// The text of string and literal tokens is left in a reused StringBuilder.
+public class JsonTokenizer {
+  final int END = -1;
+  final int STRING = '"';
+  final int LITERAL = 'v';
+
+  Reader reader;
+  char[] buffer = new char[64 * 1024];
+  int position = 0;
+  int limit = 0;
+
+  // Content of the last string or literal token
+  StringBuilder text = new StringBuilder();
+
+  JsonTokenizer(Reader reader) {
+    this.reader = reader;
+  }
+
+  // Open a UTF-8 JSON file
+  JsonTokenizer(String filePath) throws IOException {
+    this(new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8));
+  }
+
+  void close() {
+    try {
+      reader.close();
+    }
+    catch (IOException e) {
+    }
+  }
+
+  // Return the next token: one of { } [ ] : , for punctuation, STRING or
+  // LITERAL (number, true, false, null) with its content in text, or END
+  int next() throws IOException {
+    int c = read();
+    while (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == 0xFEFF) c = read();
+    if (c < 0) return END;
+    switch (c) {
+    case '{':
+    case '}':
+    case '[':
+    case ']':
+    case ':':
+    case ',':
+      return c;
+    case '"':
+      readString();
+      return STRING;
+    default:
+      text.setLength(0);
+      while (c >= 0 && "{}[]:,\" \n\r\t".indexOf(c) < 0) {
+        text.append((char) c);
+        c = read();
+      }
+      if (c >= 0) position--;
+      return LITERAL;
+    }
+  }
+
+  // Read a string token, whose opening quote was just read, into text
+  void readString() throws IOException {
+    text.setLength(0);
+    int c;
+    while ((c = read()) != '"') {
+      if (c < 0) throw new IOException("Unterminated string");
+      if (c == '\\') {
+        c = read();
+        switch (c) {
+        case 'b':
+          c = '\b';
+          break;
+        case 'f':
+          c = '\f';
+          break;
+        case 'n':
+          c = '\n';
+          break;
+        case 'r':
+          c = '\r';
+          break;
+        case 't':
+          c = '\t';
+          break;
+        case 'u':
+          c = 0;
+          for (int i = 0; i < 4; i++) c = (c << 4) + Character.digit(read(), 16);
+          break;
+        }
+      }
+      text.append((char) c);
+    }
+  }
+
+  int read() throws IOException {
+    if (position == limit) {
+      limit = reader.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[position++];
+  }
+}
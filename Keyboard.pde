@@ -39,13 +39,21 @@ public class Keyboard {
     {"C", "V", "N", "M"}
   };
 
+  // Position of the key, or keys, of each steno key in stenoOrder as
+  // row * 10 + column. The number key is not shown.
+  int[][] keyPositions = {
+    {}, {0, 10}, {1}, {11}, {2}, {12}, {3}, {13}, // # S- T- K- P- W- H- R-
+    {20}, {21}, {4, 14}, {22}, {23},              // A- O- * -E -U
+    {5}, {15}, {6}, {16}, {7}, {17}, {8}, {18}, {9}, {19} // -F -R -P -B -L -G -T -S -D -Z
+  };
+
   // Key size
   int keySizeX = 50;
   int keySizeY = 50;
 
   // Keyboard state variables
-  String lastStroke = "";
-  boolean[][] pressedKeys;
+  int lastChord = -1;
+  boolean[][] pressedKeys = new boolean[3][10];
 
   // Default constructor
   Keyboard(int x, int y, boolean showKeyboardQwerty) {
@@ -55,12 +63,12 @@ public class Keyboard {
   }
 
   // Draw keyboard
-  void draw(String stroke) {
-    if (lastStroke != stroke) {
-      lastStroke = stroke;
+  void draw(int chord) {
+    if (lastChord != chord) {
+      lastChord = chord;
 
-      // Get and set pressedKeys[][]
-      pressedKeys = getPressedKeys(stroke);
+      // Set pressedKeys[][]
+      setPressedKeys(chord);
     }
     // Top row
     drawRaw(0, 10, x, y );
@@ -85,111 +93,14 @@ public class Keyboard {
     }
   }
 
-  // Return the pressed keys corresponding to the given stroke
-  boolean[][] getPressedKeys(String stroke) {
-    boolean[][] result = new boolean[3][10];
-    //result[1][5] = true;
-    int index = stroke.indexOf("A");
-    if (index == -1) index = stroke.indexOf("O");
-    if (index == -1) index = stroke.indexOf("-");
-    if (index == -1) index = stroke.indexOf("*");
-    if (index == -1) index = stroke.indexOf("E");
-    if (index == -1) index = stroke.indexOf("U");
-
-    // The chord only contains left side consonants
-    if (index == -1) {
-      setLeftConsonants(stroke, result);
-    } else if (index > 0) { // both left side consonants and other keys
-      setLeftConsonants(stroke.substring(0,index), result);
-      setVowelsAndRightConsonants(stroke.substring(index, stroke.length()), result);
-    } else { // only other keys
-      setVowelsAndRightConsonants(stroke, result);
-    }
-
-    return result;
-  }
-}
-
-// Read all vowels, right consonants and '*' and set the corresponding pressed keys
-// in the result array
-void setVowelsAndRightConsonants(String substroke, boolean[][] result) {
-  for (int i = 0; i < substroke.length(); i++) {
-    char stenoKey = substroke.charAt(i);
-    if (stenoKey == '*') {
-      result[0][4] = true;
-      result[1][4] = true;
-    }
-    else if (stenoKey == 'A') {
-      result[2][0] = true;
-    }
-    else if (stenoKey == 'O') {
-      result[2][1] = true;
-    }
-    else if (stenoKey == 'E') {
-      result[2][2] = true;
-    }
-    else if (stenoKey == 'U') {
-      result[2][3] = true;
-    }
-    else if (stenoKey == 'F') {
-      result[0][5] = true;
-    }
-    else if (stenoKey == 'R') {
-      result[1][5] = true;
-    }
-    else if (stenoKey == 'P') {
-      result[0][6] = true;
-    }
-    else if (stenoKey == 'B') {
-      result[1][6] = true;
-    }
-    else if (stenoKey == 'L') {
-      result[0][7] = true;
-    }
-    else if (stenoKey == 'G') {
-      result[1][7] = true;
-    }
-    else if (stenoKey == 'T') {
-      result[0][8] = true;
-    }
-    else if (stenoKey == 'S') {
-      result[1][8] = true;
-    }
-    else if (stenoKey == 'D') {
-      result[0][9] = true;
-    }
-    else if (stenoKey == 'Z') {
-      result[1][9] = true;
+  // Set the pressed keys corresponding to the given chord
+  void setPressedKeys(int chord) {
+    for (boolean[] row : pressedKeys) Arrays.fill(row, false);
+    for (int key = 0; key < keyPositions.length; key++) {
+      if ((chord & (1 << key)) == 0) continue;
+      for (int position : keyPositions[key]) {
+        pressedKeys[position / 10][position % 10] = true;
+      }
     }
   }
 }
-
-// Read all left consonants and set the corresponding pressed keys
-// in the result array
-void setLeftConsonants(String substroke, boolean[][] result) {
-  for (int i = 0; i < substroke.length(); i++) {
-    char stenoKey = substroke.charAt(i);
-    if (stenoKey == 'S') {
-      result[0][0] = true;
-      result[1][0] = true;
-    }
-    else if (stenoKey == 'T') {
-      result[0][1] = true;
-    }
-    else if (stenoKey == 'K') {
-      result[1][1] = true;
-    }
-    else if (stenoKey == 'P') {
-      result[0][2] = true;
-    }
-    else if (stenoKey == 'W') {
-      result[1][2] = true;
-    }
-    else if (stenoKey == 'H') {
-      result[0][3] = true;
-    }
-    else if (stenoKey == 'R') {
-      result[1][3] = true;
-    }
-  }
-}
\ No newline at end of file
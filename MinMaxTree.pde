@@ -0,0 +1,97 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Segment tree over lesson word indices, keeping track of the words with
+// the lowest and the highest value among the ones that have a value.
+// Setting or clearing a value takes O(log n), finding the extremes O(1).
+public class MinMaxTree {
+  // Number of leaves, a power of two. Node i has children 2i and 2i+1,
+  // leaf of word w is node leaves + w.
+  int leaves = 1;
+  double[] values;
+  boolean[] present;
+
+  // Word with the lowest and highest value below each node, -1 if none
+  int[] minWords;
+  int[] maxWords;
+
+  MinMaxTree(int size) {
+    while (leaves < size) leaves <<= 1;
+    values = new double[size];
+    present = new boolean[size];
+    minWords = new int[leaves * 2];
+    maxWords = new int[leaves * 2];
+    Arrays.fill(minWords, -1);
+    Arrays.fill(maxWords, -1);
+  }
+
+  // Set the value of the given word
+  void set(int word, double value) {
+    values[word] = value;
+    present[word] = true;
+    minWords[leaves + word] = word;
+    maxWords[leaves + word] = word;
+    updateParents(leaves + word);
+  }
+
+  // Remove the value of the given word
+  void clear(int word) {
+    if (!present[word]) return;
+    present[word] = false;
+    minWords[leaves + word] = -1;
+    maxWords[leaves + word] = -1;
+    updateParents(leaves + word);
+  }
+
+  boolean isEmpty() {
+    return minWords[1] < 0;
+  }
+
+  // Word with the lowest value, the first one on ties, or -1 if empty
+  int minWord() {
+    return minWords[1];
+  }
+
+  // Word with the highest value, the first one on ties, or -1 if empty
+  int maxWord() {
+    return maxWords[1];
+  }
+
+  double get(int word) {
+    return values[word];
+  }
+
+  void updateParents(int node) {
+    for (node >>= 1; node > 0; node >>= 1) {
+      int left = node * 2;
+      int right = left + 1;
+      minWords[node] = pick(minWords[left], minWords[right], true);
+      maxWords[node] = pick(maxWords[left], maxWords[right], false);
+    }
+  }
+
+  // Of two words, the left one being first, the one with the lower or
+  // higher value. Either of them can be -1.
+  int pick(int left, int right, boolean lower) {
+    if (left < 0) return right;
+    if (right < 0) return left;
+    if (lower) return values[right] < values[left] ? right : left;
+    return values[right] > values[left] ? right : left;
+  }
+}
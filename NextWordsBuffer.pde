@@ -26,10 +26,25 @@ public class NextWordsBuffer {
   // A list of integers containing all the words in the next line
   ArrayList<Integer> nextLineWords = new ArrayList<Integer>();
 
+  // Lines built ahead between frames, the first one being the next line.
+  // nextLineWords reveals the beginning of the first one.
+  ArrayList<int[]> plannedLines = new ArrayList<int[]>();
+  int plannedLineCount = 2;
+
   // Other state variables
   int highlightedWordIndex;
   int bufferSize;
 
+  // The highlighted word as last drawn, possibly capitalized, and its widths
+  int drawnWordIndex = -1;
+  boolean isDrawnWordCapitalized;
+  String drawnWord;
+  float drawnWordWidth;
+
+  // Time of the keystroke that started the current line, until it is shown
+  long newLineKeyTime = 0;
+  boolean isNewLinePlanned;
+
   // Default constructor
   NextWordsBuffer(int bufferSize) {
     this.bufferSize = bufferSize;
@@ -58,9 +73,63 @@ public class NextWordsBuffer {
     }
   }
 
+  // Forget the lines built ahead, because the words that can be picked changed
+  void discardPlannedLines() {
+    plannedLines.clear();
+  }
+
+  // Build the lines following the current one, so that the keystroke that
+  // completes a line only has to swap the next one in. Called between frames.
+  // The next line starts with the words of it already shown, so it stays
+  // consistent with them even when it is planned after they were revealed.
+  void planLines() {
+    if (nextWords.isEmpty()) return;
+    while (plannedLines.size() < plannedLineCount) {
+      if (plannedLines.isEmpty()) {
+        plannedLines.add(buildLine(nextLineWords, nextWords.get(nextWords.size() - 1)));
+      } else {
+        int[] lastLine = plannedLines.get(plannedLines.size() - 1);
+        plannedLines.add(buildLine(null, lastLine[lastLine.length - 1]));
+      }
+    }
+  }
+
+  // Return the next line if it was built ahead and is consistent with the
+  // words of the next line already shown, null otherwise
+  int[] getPlannedLine() {
+    if (isSessionSeeded) planLines();
+    if (plannedLines.isEmpty()) return null;
+    int[] line = plannedLines.get(0);
+    boolean isConsistent = line.length >= nextLineWords.size();
+    for (int i = 0; i < nextLineWords.size() && isConsistent; i++) {
+      isConsistent = line[i] == nextLineWords.get(i);
+    }
+    if (!isConsistent) {
+      discardPlannedLines();
+      return null;
+    }
+    return line;
+  }
+
   // Tries to add a word to the next line
   void addWordsToNextLine() {
     if (isSingleWordBuffer) return;
+    float partialLineWidth = getLineWidth(nextWords, max(highlightedWordIndex - 1, 0));
+
+    // Reveal the beginning of the planned line that is narrower than the
+    // part of the current line already typed
+    int[] plannedLine = getPlannedLine();
+    if (plannedLine != null) {
+      float usedBufferSize = 0;
+      nextLineWords.clear();
+      for (int wordIndex : plannedLine) {
+        usedBufferSize += wordWidths.get(wordIndex);
+        if (usedBufferSize >= partialLineWidth) break;
+        nextLineWords.add(wordIndex);
+      }
+      return;
+    }
+
     int lastWordIndex;
     if (nextLineWords.size() > 0) {
       lastWordIndex = nextLineWords.get(nextLineWords.size() - 1);
@@ -68,16 +137,11 @@ public class NextWordsBuffer {
       lastWordIndex = nextWords.get(nextWords.size() - 1);
     }
     float usedBufferSize = getLineWidth(nextLineWords);
-    long[] penaltyLimits = calculatePenaltyLimits();
-    float partialLineWidth = getLineWidth(nextWords, max(highlightedWordIndex - 1, 0));
-
     while (usedBufferSize < partialLineWidth) {
-      int nextWordIndex = getNextWordFromPool(lastWordIndex, penaltyLimits);
+      int nextWordIndex = getNextWordFromPool(lastWordIndex);
       nextLineWords.add(nextWordIndex);
       lastWordIndex = nextWordIndex;
-
-      textFont(font, mainTextFontSize);
-      usedBufferSize += textWidth(dictionary.get(nextWordIndex).word.trim() + " ");
+      usedBufferSize += wordWidths.get(nextWordIndex);
     }
 
     // Remove this word because it finishes too far
@@ -89,8 +153,8 @@ public class NextWordsBuffer {
   // Get line width
   float getLineWidth(ArrayList<Integer> words) {
     float result = 0;
-    for (Integer wordIndex : words) {
-      result += textWidth(dictionary.get(wordIndex).word.trim() + " ");
+    for (int i = 0; i < words.size(); i++) {
+      result += wordWidths.get(words.get(i));
     }
     return result;
   }
@@ -99,44 +163,60 @@ public class NextWordsBuffer {
   float getLineWidth(ArrayList<Integer> words, int maxWordIndex) {
     float result = 0;
     for (int i = 0; i < maxWordIndex; i++) {
-      result += textWidth(dictionary.get(words.get(i)).word.trim() + " ");
+      result += wordWidths.get(words.get(i));
     }
     return result;
   }
 
-  // Fill a new line
+  // Fill a new line, with the planned one if it is ready
   void fillNewLine(int previousWordIndex) {
-    int lastWordIndex = previousWordIndex;
-
-    // Clear word list
+    newLineKeyTime = lastKeyTime;
+    lastKeyTime = 0;
+    int[] line = getPlannedLine();
+    isNewLinePlanned = line != null;
+    if (line != null) {
+      plannedLines.remove(0);
+    } else {
+      line = buildLine(nextLineWords, previousWordIndex);
+    }
     nextWords.clear();
+    for (int wordIndex : line) nextWords.add(wordIndex);
 
-    // Store the used space
-    float usedBufferSize = 0;
+    // Clear the next line, no longer needed
+    nextLineWords.clear();
 
-    // Calculate current min and max penalty limits
-    long[] penaltyLimits = calculatePenaltyLimits();
+    // Highlight first word
+    highlightedWordIndex = 0;
+  }
 
-    // If there are words in the next line, first use them
-    for (Integer wordIndex : nextLineWords) {
-      nextWords.add(wordIndex);
+  // Build a line starting with the given words, if any, then continuing
+  // after the given word as long as there is space in the buffer
+  int[] buildLine(ArrayList<Integer> firstWords, int previousWordIndex) {
+    int[] line = new int[16];
+    int size = 0;
+    int lastWordIndex = previousWordIndex;
 
-      textFont(font, mainTextFontSize);
-      usedBufferSize += textWidth(dictionary.get(wordIndex).word.trim() + " ");
-      lastWordIndex = wordIndex;
-    }
+    // Store the used space
+    float usedBufferSize = 0;
 
-    // Clear the next line, no longer needed
-    nextLineWords.clear();
+    // If there are words already shown in the next line, first use them
+    if (firstWords != null) {
+      for (int i = 0; i < firstWords.size(); i++) {
+        int wordIndex = firstWords.get(i);
+        if (size == line.length) line = Arrays.copyOf(line, size * 2);
+        line[size++] = wordIndex;
+        usedBufferSize += wordWidths.get(wordIndex);
+        lastWordIndex = wordIndex;
+      }
+    }
 
     // Fill the new line as long as there is space in the buffer
     while (usedBufferSize < bufferSize) {
-      int nextWordIndex = getNextWordFromPool(lastWordIndex, penaltyLimits);
-      nextWords.add(nextWordIndex);
+      int nextWordIndex = getNextWordFromPool(lastWordIndex);
+      if (size == line.length) line = Arrays.copyOf(line, size * 2);
+      line[size++] = nextWordIndex;
       lastWordIndex = nextWordIndex;
-
-      textFont(font, mainTextFontSize);
-      usedBufferSize += textWidth(dictionary.get(nextWordIndex).word.trim() + " ");
+      usedBufferSize += wordWidths.get(nextWordIndex);
 
       // If only one word is required, break the loop
       if (isSingleWordBuffer) break;
@@ -144,68 +224,35 @@ public class NextWordsBuffer {
 
     // Remove this word because it probably finishes off-screen,
     // unless it's the only one
-    if (nextWords.size() > 1) nextWords.remove(nextWords.size()-1);
-
-    // Highlight first word
-    highlightedWordIndex = 0;
-  }
-
-  // Compute the next word. Slow-typed words have more possibilities
-  // to show up than fast-typed ones
-  int getNextWordFromPool(int previousWordIndex, long[] penaltyLimits) {
-    // Create word pool
-    ArrayList<Integer> wordPool = new ArrayList<Integer>();
-
-    // For each unlocked word, if it's not the current one and it
-    // isn't blacklisted, add it to the pool a number of times,
-    // based on word penalty.
-    for (int i = 0; i < startBaseWords + unlockedWords; i++) {
-      if (i == previousWordIndex || wordsBlacklist.contains(dictionary.get(i).word)) continue;
-      else {
-        int penalty = (int) utils.longmap(wordStats.get(i).getWordPenalty(), penaltyLimits[0], penaltyLimits[1], 1L, 100L);
-
-        for (int j = 0; j < penalty; j++) wordPool.add(i);
-      }
-    }
-
-    // Fetch a random word from the word pool
-    return wordPool.get((int) random(0, wordPool.size()));
+    if (size > 1) size--;
+    return Arrays.copyOf(line, size);
   }
 
-  // Calculate current min and max penalty limits
-  long[] calculatePenaltyLimits() {
-    long currentMinPenalty = 1000000000;
-    long currentMaxPenalty = 0;
-    for (int i = 0; i < min(dictionary.size(), startBaseWords + unlockedWords); i++) {
-      if (i == currentWordIndex || wordsBlacklist.contains(dictionary.get(i).word)) continue;
-      long penalty = wordStats.get(i).getWordPenalty();
-      if (currentMinPenalty > penalty) currentMinPenalty = penalty;
-      if (currentMaxPenalty < penalty) currentMaxPenalty = penalty;
-    }
-    if (currentMinPenalty==currentMaxPenalty) currentMaxPenalty+=1;
-    return new long[] {currentMinPenalty, currentMaxPenalty};
+  // Compute the next word, with the selector of the session
+  int getNextWordFromPool(int previousWordIndex) {
+    return wordSelector.next(previousWordIndex);
   }
 
   // Draw target line text
-  void showText(int x, int y, String lastFullWord) {
+  void showText(int x, int y, boolean isCapitalized) {
     float currentX = x;
     textFont(font, mainTextFontSize);
     for (int i = 0; i < nextWords.size(); i++) {
       int index = nextWords.get(i);
-      String word = dictionary.get(index).word;
+      String word = dictionary.getWord(index);
+      float wordWidth = wordWidths.get(index);
       if (i == highlightedWordIndex) {
-
-        if (lastFullWord.endsWith("{-|}")) {
-          word = word.substring(0, 1).toUpperCase() + word.substring(1);
-        }
+        setDrawnWord(index, isCapitalized);
+        word = drawnWord;
+        wordWidth = drawnWordWidth + wordWidths.spaceWidth;
         noFill();
         stroke(250, 200, 100);
-        line(currentX, y + mainTextFontSize / 5, currentX + textWidth(word), y + mainTextFontSize / 5);
+        line(currentX, y + mainTextFontSize / 5, currentX + drawnWordWidth, y + mainTextFontSize / 5);
         fill(250, 200, 100);
       }
       text(word, currentX, y);
       if (i == highlightedWordIndex) fill(isLessonPaused ? 200 : 250);
-      currentX += textWidth(word + " ");
+      currentX += wordWidth;
     }
 
     // Draw next line
@@ -217,10 +264,29 @@ public class NextWordsBuffer {
         fill(min(250, 25 * (nextLineWords.size() - i)));
       }
       int index = nextLineWords.get(i);
-      String word = dictionary.get(index).word;
+      String word = dictionary.getWord(index);
       text(word, currentX, y + mainTextFontSize);
       fill(isLessonPaused ? 200 : 250);
-      currentX += textWidth(word + " ");
+      currentX += wordWidths.get(index);
+    }
+
+    // Report how long the new line took to show up after the keystroke
+    if (debug && newLineKeyTime > 0) {
+      println("New line shown " + (System.nanoTime() - newLineKeyTime) / 1000 + " us after the keystroke, " + (isNewLinePlanned ? "built ahead." : "built on the keystroke."));
+    }
+    newLineKeyTime = 0;
+  }
+
+  // Prepare the highlighted word for drawing, unless it's already prepared.
+  // The font must be set.
+  void setDrawnWord(int index, boolean isCapitalized) {
+    if (index == drawnWordIndex && isCapitalized == isDrawnWordCapitalized) return;
+    drawnWordIndex = index;
+    isDrawnWordCapitalized = isCapitalized;
+    drawnWord = dictionary.getWord(index);
+    if (isCapitalized) {
+      drawnWord = drawnWord.substring(0, 1).toUpperCase() + drawnWord.substring(1);
     }
+    drawnWordWidth = textWidth(drawnWord);
   }
-}
\ No newline at end of file
+}
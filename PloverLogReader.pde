@@ -0,0 +1,239 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+// This thread follows the Plover log file and publishes every parsed
+// stroke to a queue, so that no disk I/O happens on the animation thread.
+// When Plover rotates or truncates the log, the reader finishes the old
+// file and starts again from the beginning of the new one.
+public class PloverLogReader extends Thread {
+  Path logPath;
+  StrokeQueue queue;
+
+  // Offset of the next byte to read from the log file
+  long position = 0;
+
+  // How far back from the end of the log to look for the last translation
+  long maxSeekBack = 1024 * 1024;
+
+  // Maximum time to wait for a file system event before checking the
+  // log anyway. Some platforms only implement WatchService by polling.
+  long pollPeriod = 10;
+
+  FileChannel channel;
+  WatchService watcher;
+
+  // Identity of the open log file, used to detect rotation. Null on
+  // platforms without file keys, where only truncation is detected.
+  Object fileKey;
+  ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+
+  // Bytes of the line currently being read
+  byte[] line = new byte[256];
+  int lineLength = 0;
+
+  StrokeParser parser = new StrokeParser();
+
+  PloverLogReader(String logFilePath, StrokeQueue queue) {
+    this.logPath = Paths.get(logFilePath).toAbsolutePath();
+    this.queue = queue;
+    setDaemon(true);
+  }
+
+  // Scan the log backwards from its end and return the last translation,
+  // or null if there is none. Following the log will then start right
+  // after the last complete line, without replaying the whole file.
+  Stroke seekToLastStroke() {
+    FileChannel seekChannel = null;
+    try {
+      seekChannel = FileChannel.open(logPath, StandardOpenOption.READ);
+      long end = seekChannel.size();
+      long blockEnd = end;
+      // Bytes of the line fragment that continues into the block on the right
+      byte[] carry = new byte[0];
+      boolean foundLineEnd = false;
+      position = end;
+      while (blockEnd > 0 && end - blockEnd < maxSeekBack) {
+        int size = (int) Math.min(readBuffer.capacity(), blockEnd);
+        long blockStart = blockEnd - size;
+        readBuffer.clear();
+        readBuffer.limit(size);
+        while (readBuffer.hasRemaining()) {
+          if (seekChannel.read(readBuffer, blockStart + readBuffer.position()) < 0) break;
+        }
+        byte[] data = new byte[size + carry.length];
+        readBuffer.flip();
+        readBuffer.get(data, 0, size);
+        System.arraycopy(carry, 0, data, size, carry.length);
+        int lineEnd = data.length;
+        for (int i = data.length - 1; i >= 0; i--) {
+          if (data[i] != '\n') continue;
+          if (!foundLineEnd) {
+            // Plover may be half way through writing the last line, leave it to run()
+            foundLineEnd = true;
+            position = blockStart + i + 1;
+          } else {
+            Stroke stroke = new Stroke();
+            if (parser.parse(data, i + 1, lineEnd, stroke)) return stroke;
+          }
+          lineEnd = i;
+        }
+        carry = Arrays.copyOf(data, lineEnd);
+        blockEnd = blockStart;
+      }
+      if (blockEnd > 0) return null;
+      if (!foundLineEnd) {
+        position = 0;
+      } else {
+        Stroke stroke = new Stroke();
+        if (parser.parse(carry, 0, carry.length, stroke)) return stroke;
+      }
+    }
+    catch (IOException e) {
+      println("Error while reading Plover log file: " + e.getMessage());
+    }
+    finally {
+      try {
+        if (seekChannel != null) seekChannel.close();
+      }
+      catch (IOException e) {
+      }
+    }
+    return null;
+  }
+
+  void run() {
+    try {
+      watcher = FileSystems.getDefault().newWatchService();
+      logPath.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+      openLog();
+    }
+    catch (IOException e) {
+      println("Error while reading Plover log file: " + e.getMessage());
+      if (watcher == null) return;
+    }
+    while (!isInterrupted()) {
+      try {
+        if (channel == null) {
+          // The log doesn't exist yet, or it was rotated and not created again
+          openLog();
+        } else {
+          readAvailable();
+          checkRotation();
+        }
+        WatchKey key = watcher.poll(pollPeriod, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          key.pollEvents();
+          key.reset();
+        }
+      }
+      catch (InterruptedException x) {
+        break;
+      }
+      catch (NoSuchFileException e) {
+      }
+      catch (IOException e) {
+        println("Error while reading stroke from Plover log file: " + e.getMessage());
+      }
+    }
+    try {
+      watcher.close();
+      if (channel != null) channel.close();
+    }
+    catch (IOException e) {
+    }
+  }
+
+  // Open the log file at the current position
+  void openLog() throws IOException {
+    channel = FileChannel.open(logPath, StandardOpenOption.READ);
+    fileKey = Files.readAttributes(logPath, BasicFileAttributes.class).fileKey();
+  }
+
+  // If the log was truncated, start reading it again from the beginning.
+  // If it was replaced by a new file, finish reading the old one first so
+  // that no stroke written before the rotation is lost.
+  void checkRotation() throws IOException, InterruptedException {
+    if (channel.size() < position) {
+      position = 0;
+      lineLength = 0;
+      return;
+    }
+    Object currentKey;
+    try {
+      currentKey = Files.readAttributes(logPath, BasicFileAttributes.class).fileKey();
+    }
+    catch (NoSuchFileException e) {
+      currentKey = null;
+      if (fileKey == null) return;
+    }
+    if (fileKey == null || fileKey.equals(currentKey)) return;
+    readAvailable();
+    channel.close();
+    channel = null;
+    position = 0;
+    lineLength = 0;
+    if (currentKey != null) openLog();
+  }
+
+  // Read everything appended to the log since the last call
+  void readAvailable() throws IOException, InterruptedException {
+    while (position < channel.size()) {
+      readBuffer.clear();
+      int read = channel.read(readBuffer, position);
+      if (read <= 0) break;
+      position += read;
+      for (int i = 0; i < read; i++) {
+        byte b = readBuffer.get(i);
+        if (b == '\n') {
+          publishLine();
+        } else {
+          appendToLine(b);
+        }
+      }
+    }
+  }
+
+  void appendToLine(byte b) {
+    if (lineLength == line.length) line = Arrays.copyOf(line, line.length * 2);
+    line[lineLength++] = b;
+  }
+
+  // Parse the current line and, if it is a translation, hand it over to the
+  // animation thread. Waits for room if the queue is full.
+  void publishLine() throws InterruptedException {
+    Stroke slot;
+    while ((slot = queue.claim()) == null) Thread.sleep(pollPeriod);
+    if (parser.parse(line, 0, lineLength, slot)) queue.publish();
+    lineLength = 0;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Writes the session to disk on its own thread, so that saving never
+// holds up the animation thread. The animation thread hands over copies of
+// the state to save; a request that arrives before the previous one was
+// written replaces it, so bursts of saves are written once. Files are
+// written aside and then renamed, so a crash never leaves one half written.
+// The saver also forces the word stats journal to disk every second.
+public class SessionSaver extends Thread {
+  String propertiesFilePath;
+  String blacklistFilePath;
+  long forceInterval = 1000;
+
+  // State waiting to be written: level and unlocked words, blacklist, and
+  // word stats with the end of the journal records they include
+  boolean isSessionPending = false;
+  int level;
+  int unlockedWords;
+  ArrayList<String> blacklist;
+  WordStatsStore stats;
+  long statsJournalEnd;
+
+  boolean isClosing = false;
+
+  SessionSaver(String propertiesFilePath, String blacklistFilePath) {
+    super("StenoTutor session saver");
+    setDaemon(true);
+    this.propertiesFilePath = propertiesFilePath;
+    this.blacklistFilePath = blacklistFilePath;
+  }
+
+  synchronized void saveSession(int level, int unlockedWords) {
+    this.level = level;
+    this.unlockedWords = unlockedWords;
+    isSessionPending = true;
+    notify();
+  }
+
+  synchronized void saveBlacklist(ArrayList<String> blacklist) {
+    this.blacklist = new ArrayList<String>(blacklist);
+    notify();
+  }
+
+  // Write the given stats, which must not change anymore, and compact the
+  // word stats journal
+  synchronized void saveStats(WordStatsStore stats, long journalEnd) {
+    this.stats = stats;
+    statsJournalEnd = journalEnd;
+    notify();
+  }
+
+  // Write what is pending and stop, waiting at most the given time
+  void close(long timeout) {
+    synchronized (this) {
+      isClosing = true;
+      notify();
+    }
+    try {
+      join(timeout);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public void run() {
+    while (true) {
+      boolean isSessionToSave;
+      int levelToSave;
+      int unlockedWordsToSave;
+      ArrayList<String> blacklistToSave;
+      WordStatsStore statsToSave;
+      long journalEnd;
+      boolean isLast;
+      synchronized (this) {
+        if (!isSessionPending && blacklist == null && stats == null && !isClosing) {
+          try {
+            wait(forceInterval);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+        }
+        isSessionToSave = isSessionPending;
+        levelToSave = level;
+        unlockedWordsToSave = unlockedWords;
+        blacklistToSave = blacklist;
+        statsToSave = stats;
+        journalEnd = statsJournalEnd;
+        isSessionPending = false;
+        blacklist = null;
+        stats = null;
+        isLast = isClosing;
+      }
+      if (isSessionToSave) writeProperties(levelToSave, unlockedWordsToSave);
+      if (blacklistToSave != null) utils.writeBlacklist(blacklistToSave, blacklistFilePath);
+      if (statsToSave != null) wordStatsJournal.compact(statsToSave, journalEnd);
+      if (wordStatsJournal != null) wordStatsJournal.force();
+      if (isLast) {
+        synchronized (this) {
+          // Unless a compaction handed over stats saved while it ran
+          if (stats == null) return;
+        }
+      }
+    }
+  }
+
+  // Update the level and the unlocked words in the session properties.
+  // (note that the Java Properties class does not support per-property comments
+  // and there's no easy way to add apache commons configuration to Processing
+  // therefore, we must update the properties manually by finding them
+  // in the properties file and replacing them with ones that contain the correct values)
+  void writeProperties(int level, int unlockedWords) {
+    try {
+      BufferedReader file = createReader(propertiesFilePath);
+      String line;
+      StringBuilder inputBuffer = new StringBuilder();
+      while ((line = file.readLine()) != null) {
+        if (line.startsWith("session.unlockedWords")) {
+          inputBuffer.append("session.unlockedWords = " + unlockedWords);
+        } else if (line.startsWith("session.startLevel")) {
+          inputBuffer.append("session.startLevel = " + level);
+        } else {
+          inputBuffer.append(line);
+        }
+        inputBuffer.append('\n');
+      }
+      file.close();
+      utils.writeFileAtomically(propertiesFilePath, inputBuffer.toString());
+    }
+    catch (IOException e) {
+      println("Error writing session properties.");
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Leitner style spaced repetition. Each active word sits in a box given by
+// how many of its latest samples in a row were typed fast enough to level
+// up, and comes back after a number of words that doubles with each box.
+// A slow word then shows up again within a few words, while a word typed
+// fast many times in a row is left alone for a long while.
+//
+// Time is counted in chosen words rather than milliseconds, so lines built
+// ahead schedule the same way as words shown right away. Words wait in a queue by due
+// time: choosing one, rescheduling it and updating its box take O(log n),
+// however many words are unlocked. The word due first is chosen even if it
+// is not due yet, so there is always a word to show.
+public class SpacedRepetitionSelector implements WordSelector {
+  // Words until a word in box 0 comes back, doubled with each box
+  int firstInterval = 4;
+  int maxBox = 20;
+
+  // Slowest sample time, in milliseconds, that counts as fast
+  long fastTime;
+
+  WordQueue queue;
+  // Number of words chosen so far
+  long time = 0;
+
+  SpacedRepetitionSelector(int size, long fastTime) {
+    queue = new WordQueue(size);
+    this.fastTime = fastTime;
+  }
+
+  // Words until the given word should come back, from its stats
+  long interval(int word) {
+    int box = min(maxBox, wordStats.getFastStreak(word, fastTime));
+    return (long) firstInterval << box;
+  }
+
+  // New words are due right away, in lesson order
+  public void activate(int word) {
+    if (!queue.contains(word)) queue.set(word, time);
+  }
+
+  public void deactivate(int word) {
+    queue.remove(word);
+  }
+
+  // The word was just typed, so it moves to its new box from now
+  public void update(int word) {
+    if (queue.contains(word)) queue.set(word, time + interval(word));
+  }
+
+  public boolean isActive(int word) {
+    return queue.contains(word);
+  }
+
+  public int next(int previousWord) {
+    if (queue.isEmpty()) return previousWord;
+    int word = queue.first();
+    // Skip the previous word if another one is active
+    if (word == previousWord && queue.size() > 1) {
+      long due = queue.get(word);
+      queue.remove(word);
+      word = queue.first();
+      queue.set(previousWord, due);
+    }
+    time++;
+    queue.set(word, time + interval(word));
+    return word;
+  }
+}
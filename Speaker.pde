@@ -18,23 +18,29 @@
  */
 
 import guru.ttslib.*;
+import java.util.concurrent.Future;
 
 // This thread announces the statement just once
 public class Speaker extends Thread {
   // What to say
   String statement;
 
-  // Speech synthesis wrapper
-  TTS tts;
+  // Speech synthesis wrapper, may still be initializing
+  Future<TTS> tts;
 
   // Set statement and initialize TTS wrapper
-  Speaker(String statement, TTS tts) {
+  Speaker(String statement, Future<TTS> tts) {
     this.statement = statement;
     this.tts = tts;
   }
 
-  // Read the statement once
+  // Read the statement once, waiting for speech synthesis to be ready
   void run() {
-    tts.speak(statement);
+    try {
+      tts.get().speak(statement);
+    }
+    catch (Exception e) {
+      println("Error while using speech synthesis: " + e.getMessage());
+    }
   }
 }
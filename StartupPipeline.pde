@@ -0,0 +1,97 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+// Runs independent startup phases in parallel. Each phase is submitted as
+// soon as the phases it depends on have been joined, and setup() only joins
+// what the first frame needs. How long each phase took, and the heap in use,
+// are printed in debug mode.
+public class StartupPipeline {
+  ExecutorService executor;
+  long startTime = System.currentTimeMillis();
+  boolean debug;
+
+  StartupPipeline(int threads, boolean debug) {
+    this.debug = debug;
+    executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "StenoTutor startup");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  // Start a phase in the background
+  <T> Future<T> submit(final String phase, final Callable<T> task) {
+    return executor.submit(new Callable<T>() {
+      public T call() throws Exception {
+        long phaseStart = System.currentTimeMillis();
+        try {
+          return task.call();
+        }
+        finally {
+          logPhase(phase, phaseStart);
+        }
+      }
+    });
+  }
+
+  // Wait for a phase to complete and return its result. A failed phase is
+  // fatal, just like it would be if it ran on the animation thread.
+  <T> T join(Future<T> phase) {
+    try {
+      return phase.get();
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Print how long a phase took and when it ended from the start of the pipeline
+  void logPhase(String phase, long phaseStart) {
+    if (debug) {
+      long now = System.currentTimeMillis();
+      println("Startup: " + phase + " took " + (now - phaseStart) + " ms, done at " + (now - startTime) + " ms.");
+    }
+  }
+
+  // Print how much heap is in use, garbage included, once the given phase is done
+  void logHeap(String phase) {
+    if (debug) {
+      Runtime runtime = Runtime.getRuntime();
+      println("Startup: " + ((runtime.totalMemory() - runtime.freeMemory()) >> 20) + " MB of heap in use after " + phase + ".");
+    }
+  }
+
+  // Let the phases still running complete, without accepting new ones
+  void shutdown() {
+    executor.shutdown();
+  }
+}
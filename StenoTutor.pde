@@ -21,7 +21,10 @@
 import java.io.*;
 import java.util.Properties;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 // Session parameters, see data/session.properties for more info
 String lessonName;
@@ -40,14 +43,23 @@ boolean isWordDictationEnabled;
 boolean showKeyboard;
 boolean showKeyboardQwerty;
 boolean showKeyboardChord;
+String wordSelectorName = "penalty";
+int autosaveInterval;
+
+// Random numbers of the word selection. When session.randomSeed is set, they
+// are the same every session. Only they are: word times and level ups
+// follow the system clock, so the words picked still depend on typing.
+SplittableRandom sessionRandom;
+boolean isSessionSeeded = false;
 
 //Various utility methods that we really only want to use statically but we have to 
 //use from an instance with no state because Processing behaves stupidly.
 Utils utils = new Utils();
 
 
-// Used to read Plover log
-BufferedReader logReader = null;
+// Follows the Plover log on its own thread and queues the parsed strokes
+PloverLogReader ploverLogReader = null;
+StrokeQueue strokeQueue = new StrokeQueue(256);
 
 PFont font;
 
@@ -66,8 +78,10 @@ String userDictFilePath;
 
 // Paths to lesson dictionaries and blacklist
 String lesDictionaryFilePath;
+String chdDictionaryFilePath;
 String blkDictionaryFilePath;
 String sttDictionaryFilePath;
+String stjDictionaryFilePath;
 
 // On-screen keyboard
 Keyboard keyboard;
@@ -75,17 +89,37 @@ Keyboard keyboard;
 // Input buffer
 String buffer = "";
 
+// Time of the last key typed, in nanoseconds, to measure input latency
+long lastKeyTime = 0;
+
 // Target line buffer
 NextWordsBuffer nextWordsBuffer;
 
-// Speech synthesis wrapper
-TTS tts;
+// Speech synthesis wrapper, initialized in the background at startup
+Future<TTS> tts;
 
 // Dictionary of current lesson
 Dictionary dictionary;
 
-// Stats of current lesson for each word
-ArrayList<WordStats> wordStats = new ArrayList<WordStats>();
+// Picks the words of the target lines among the active ones, that is the
+// unlocked words that aren't blacklisted
+WordSelector wordSelector;
+
+// Average WPM of the active words, for the worst word and level up checks
+WordWpmIndex wordWpmIndex;
+
+// Width of the lesson words in the target lines
+WordWidths wordWidths;
+
+// Stats of current lesson for each word, and the journal of the samples
+// typed since they were last saved
+WordStatsStore wordStats;
+WordStatsJournal wordStatsJournal;
+
+// Writes the session in the background, when it is saved from the menu and
+// every autosaveInterval seconds
+SessionSaver sessionSaver;
+long lastSaveTime = 0;
 
 /*
  * Blacklisted words, useful if you just started learning without a NKRO keyboard or a
@@ -96,6 +130,13 @@ ArrayList<WordStats> wordStats = new ArrayList<WordStats>();
  */
 ArrayList<String> wordsBlacklist = new ArrayList<String>();
 
+// Dictionary indices of the blacklisted words, resolved from wordsBlacklist
+BitSet blacklistedWords = new BitSet();
+int blacklistedWordCount = 0;
+
+// Unlocked words that aren't blacklisted
+int activeWordCount = 0;
+
 // Current level
 int currentLevel;
 
@@ -137,11 +178,13 @@ int worstWordWpm = 0;
 String worstWord = "";
 
 // Stores the previous stroke, needed when redrawing text info
-Stroke stroke = null;
 Stroke previousStroke = new Stroke();
 
-// Stores the previous word; needed to determine whether to capitalize current word
-String lastFullWord = "";
+// Whether the last translation was a capitalization stroke, so that the
+// current word must be capitalized, and whether the last word translated
+// was capitalized this way, as it may be read before the word is typed
+boolean isNextWordCapitalized = false;
+boolean isLastWordCapitalized = false;
 
 // Whether CONTROL key has been pressed and released, used to blacklist the current word
 boolean ctrlKeyReleased = false;
@@ -202,32 +245,81 @@ void setup() {
   // Read session configuration
   readSessionConfig();
 
-  // Load Plover logs
-  logReader = utils.loadPloverLogs(logFilePath);
-
-  // Set the last full word as the result of the last stroke in the log in case the user stroked
-  // something that will cause the next word to be capitalized just before starting the program. Mr.
-  stroke = utils.getNextStroke(logReader);
-  if (stroke != null) {
-    previousStroke = stroke;
-  }
-  lastFullWord = previousStroke.word;
-
-  // Prepare file paths and read lesson dictionary and blacklist
+  // Prepare file paths
   lesDictionaryFilePath = sketchPath("/data/lessons/" + lessonName + ".les");
+  chdDictionaryFilePath = sketchPath("/data/lessons/" + lessonName + ".chd");
   blkDictionaryFilePath = sketchPath("/data/lessons/" + lessonName + ".blk");
   sttDictionaryFilePath = sketchPath("/data/lessons/" + lessonName + ".stt");
-  dictionary = new Dictionary(lesDictionaryFilePath, mainDictFilePath, userDictFilePath, debug);
-  wordsBlacklist = utils.readBlacklist(blkDictionaryFilePath);
+  stjDictionaryFilePath = sketchPath("/data/lessons/" + lessonName + ".stj");
+
+  // Load Plover logs, lesson dictionary, blacklist and word stats, and initialize
+  // speech synthesis, all in parallel
+  StartupPipeline startup = new StartupPipeline(5, debug);
+  ploverLogReader = new PloverLogReader(logFilePath, strokeQueue);
+  Future<Stroke> lastStrokePhase = startup.submit("Plover log seek", new Callable<Stroke>() {
+    public Stroke call() {
+      return ploverLogReader.seekToLastStroke();
+    }
+  });
+  Future<Dictionary> dictionaryPhase = startup.submit("lesson dictionary", new Callable<Dictionary>() {
+    public Dictionary call() {
+      return new Dictionary(lesDictionaryFilePath, mainDictFilePath, userDictFilePath, chdDictionaryFilePath, debug);
+    }
+  });
+  Future<ArrayList<String>> blacklistPhase = startup.submit("blacklist", new Callable<ArrayList<String>>() {
+    public ArrayList<String> call() {
+      return utils.readBlacklist(blkDictionaryFilePath);
+    }
+  });
+  Future<WordStatsFile> wordStatsPhase = startup.submit("word stats", new Callable<WordStatsFile>() {
+    public WordStatsFile call() {
+      WordStatsFile wordStatsFile = new WordStatsFile(sttDictionaryFilePath);
+      wordStatsFile.read();
+      return wordStatsFile;
+    }
+  });
+  // Only needed when something is said, so it isn't joined here
+  tts = startup.submit("speech synthesis", new Callable<TTS>() {
+    public TTS call() {
+      TTS speech = new TTS();
+      speech.setPitchRange(7);
+      return speech;
+    }
+  });
+  startup.shutdown();
+
+  // Apply the last stroke in the log in case the user stroked something that will
+  // cause the next word to be capitalized just before starting the program. Mr.
+  Stroke lastStroke = startup.join(lastStrokePhase);
+  if (lastStroke != null) {
+    applyStroke(lastStroke);
+  }
+
+  // Follow the rest of the log in the background
+  ploverLogReader.start();
 
   // Make sure startBaseWords is adjusted based on blacklist
+  try {
+    dictionary = startup.join(dictionaryPhase);
+  }
+  catch (RuntimeException e) {
+    println("Error while loading the lesson dictionary: " + e.getCause().getMessage());
+    exit();
+    return;
+  }
+  wordsBlacklist = startup.join(blacklistPhase);
+  resolveBlacklist();
   applyStartBlacklist();
+  wordWidths = new WordWidths(dictionary.wordCount, font, mainTextFontSize);
 
-  // Initialize word stats
-  wordStats = utils.readWordStats(sttDictionaryFilePath, wordAvgSamples);
-  if (wordStats.size()==0) {
-    wordStats = defaultWordStats();
-  }
+  // Initialize word stats, matching the ones read to the lesson words
+  wordStats = startup.join(wordStatsPhase).join(wordAvgSamples, wordStartAvgWpm);
+  wordStatsJournal = new WordStatsJournal(stjDictionaryFilePath, sttDictionaryFilePath);
+  wordStatsJournal.open(wordStats, wordStartAvgWpm);
+  sessionSaver = new SessionSaver(sketchPath("/data/session.properties"), blkDictionaryFilePath);
+  sessionSaver.start();
+  rebuildWordIndexes();
+  startup.logHeap("loading " + dictionary.size() + " lesson words");
 
   // Initialize target line buffer and set next word index
   nextWordsBuffer = new NextWordsBuffer(frameSizeX - nextWordX);
@@ -239,15 +331,12 @@ void setup() {
   // Configure display size
   size(700, 480);
 
-  // Initialize and configure speech synthesis
-  tts = new TTS();
-  tts.setPitchRange(7);
-
   // Paint background, show text info and draw keyboard
   background(25);
   Stroke stroke = new Stroke();
   showTextInfo(stroke);
   drawKeyboard(stroke);
+  startup.logPhase("first frame", startup.startTime);
 
   // If word dictation is enabled, TTS the first word
   if (isWordDictationEnabled) {
@@ -268,6 +357,10 @@ void draw() {
     tabKeyReleased = false;
   }
 
+  // Apply the strokes read from the Plover log since the last frame, even
+  // the ones that didn't output any key
+  processStrokes();
+
 
 
   // If the lesson just started, add word start avg time. This ensures that
@@ -290,8 +383,19 @@ void draw() {
 
   // Paint background, show text info and draw keyboard
   background(25);
-  showTextInfo(stroke == null ? previousStroke : stroke);
-  drawKeyboard(stroke == null ? previousStroke : stroke);
+  showTextInfo(previousStroke);
+  drawKeyboard(previousStroke);
+
+  // Build the next target lines while waiting for input. Seeded sessions
+  // build them on demand instead, so that the words picked don't depend
+  // on when frames are drawn.
+  if (!isSessionSeeded) nextWordsBuffer.planLines();
+
+  // Save the session now and then. The word stats are already in the
+  // journal, so only the level and the unlocked words are saved.
+  if (autosaveInterval > 0 && isLessonStarted && System.currentTimeMillis() - lastSaveTime >= autosaveInterval * 1000L) {
+    saveSession();
+  }
   if (timebox>0 && getElapsedTime()/60000.>=timebox) {
     say("Session complete");
     isLessonPaused = true;
@@ -337,20 +441,47 @@ void keyPressed() {
     break;
   default:
     if (!isLessonPaused) {
+      lastKeyTime = System.nanoTime();
       buffer += key;
-      // Read the next stroke from Plover log
-      stroke = utils.getNextStroke(logReader);
-
-      // If the stroke is not null, store it
-      if (stroke != null) {
-        previousStroke = stroke;
-      }
+      // Apply the strokes read from Plover log
+      processStrokes();
       checkBuffer(false);
     }
   }
 }
 
 
+// Apply every stroke queued by the Plover log reader, in the order they
+// were written
+void processStrokes() {
+  Stroke next;
+  while ((next = strokeQueue.peek()) != null) {
+    applyStroke(next);
+    strokeQueue.release();
+  }
+}
+
+// Update the stroke dependent state with a single stroke. The stroke
+// belongs to the queue, so it is copied rather than kept.
+void applyStroke(Stroke stroke) {
+  previousStroke.set(stroke);
+
+  // A capitalization stroke doesn't output any text, so it is tracked
+  // here, in stroke order, rather than when the next word is completed,
+  // as the stroke that typed the word may not be read yet by then. Undoing
+  // it cancels the capitalization, and the next translation consumes it.
+  // Undoing that translation, like the first stroke of a longer word,
+  // gives the capitalization back to the one that replaces it.
+  if (stroke.word.endsWith("{-|}")) {
+    isNextWordCapitalized = !stroke.isDelete;
+  } else if (stroke.isDelete) {
+    isNextWordCapitalized = isLastWordCapitalized;
+  } else {
+    isLastWordCapitalized = isNextWordCapitalized;
+    isNextWordCapitalized = false;
+  }
+}
+
 // Check for released keys and update corresponding state
 void keyReleased() {
   // Blacklist command
@@ -376,7 +507,7 @@ void applyStartBlacklist() {
   int totalWords = 0;
   int i = 0;
   while (totalWords < startBaseWords && i < dictionary.size()) {
-    if (wordsBlacklist.contains(dictionary.get(i).word.trim())) {
+    if (blacklistedWords.get(i)) {
       startBaseWords++;
     }
     totalWords++;
@@ -414,6 +545,11 @@ void readSessionConfig() {
   showKeyboard = Boolean.valueOf(properties.getProperty("session.showKeyboard", "true"));
   showKeyboardQwerty = Boolean.valueOf(properties.getProperty("session.showKeyboardQwerty", "true"));
   showKeyboardChord = Boolean.valueOf(properties.getProperty("session.showKeyboardChord", "true"));
+  autosaveInterval = Integer.valueOf(properties.getProperty("session.autosaveInterval", "" + 60));
+  wordSelectorName = properties.getProperty("session.wordSelector", "penalty").trim();
+  String randomSeed = properties.getProperty("session.randomSeed", "").trim();
+  isSessionSeeded = randomSeed.length() > 0;
+  sessionRandom = isSessionSeeded ? new SplittableRandom(Long.valueOf(randomSeed)) : new SplittableRandom();
 }
 
 // Automatically find Plover files paths
@@ -436,12 +572,13 @@ void blacklistCurrentWord() {
   // word to blacklist, save blacklist to file and unlock a new word.
   // Finally, move to next word.
   if (isLessonStarted && !isLessonPaused) {
-    wordsBlacklist.add(dictionary.get(currentWordIndex).word);
-    utils.writeBlacklist(wordsBlacklist, blkDictionaryFilePath);
+    blacklistWord(currentWordIndex);
+    int totalWords = startBaseWords + unlockedWords;
     unlockedWords++;
 
     // Make sure that the unlocked world isn't yet another blacklisted word
-    while (wordsBlacklist.contains(dictionary.get(startBaseWords + unlockedWords - 1).word)) unlockedWords++;
+    while (blacklistedWords.get(startBaseWords + unlockedWords - 1)) unlockedWords++;
+    activateWords(totalWords, startBaseWords + unlockedWords);
 
     // Clear and refresh next words buffer
     nextWordsBuffer.goToListEnd();
@@ -462,14 +599,17 @@ void drawKeyboard(Stroke stroke) {
 
   // If show chord is enabled, show the next chord
   if (showKeyboardChord) {
-    Word current = dictionary.get(currentWordIndex);
-    String chord = current.getBestStroke(buffer.equals("") ? "" : stroke.stroke);
-    keyboard.draw(chord);
+    keyboard.draw(getNextChord(stroke));
   } else {
-    keyboard.draw("-");
+    keyboard.draw(0);
   }
 }
 
+// Return the best next chord for the current word, given the last stroke
+int getNextChord(Stroke stroke) {
+  return dictionary.getBestChord(currentWordIndex, stroke.chords, buffer.equals("") ? 0 : stroke.chordCount);
+}
+
 // Display all text info shown in StenoTutor window
 void showTextInfo(Stroke stroke) {
   textAlign(RIGHT);
@@ -492,19 +632,19 @@ void showTextInfo(Stroke stroke) {
   textAlign(LEFT);
   fill(isLessonPaused ? 200 : 250);
   textFont(font, mainTextFontSize);
-  nextWordsBuffer.showText(nextWordX, nextWordY, lastFullWord);
+  nextWordsBuffer.showText(nextWordX, nextWordY, isNextWordCapitalized);
   text(buffer.trim() + (isLessonPaused || System.currentTimeMillis() % 1000 < 500 ? "_" : ""), bufferX, bufferY);
   fill(200);
   textFont(font, defaultFontSize);
-  text(dictionary.get(currentWordIndex).getBestStroke(buffer.equals("") ? "" : stroke.stroke), nextChordX, nextChordY);
+  text(chordText(getNextChord(stroke)), nextChordX, nextChordY);
   text(stroke.isDelete ? "*" : buffer.equals("") ? "" : stroke.stroke, lastChordX, lastChordY);
   text((int) getAverageWpm(), wpmX, wpmY);
   long timerValue = isLessonStarted ? getElapsedTime() : 0;
   text((int) timerValue/1000, timerX, timerY);
-  text(isLessonStarted ? (int) wordStats.get(currentWordIndex).getAvgWpm() : 0, wordWpmX, wordWpmY);
+  text(isLessonStarted ? (int) wordStats.getAvgWpm(currentWordIndex) : 0, wordWpmX, wordWpmY);
   text(currentLevel, levelX, levelY);
   text(getActualUnlockedWords(), unlockedWordsX, unlockedWordsY);
-  text(dictionary.size() - wordsBlacklist.size(), totalWordsX, totalWordsY);
+  text(dictionary.size() - blacklistedWordCount, totalWordsX, totalWordsY);
   text(worstWordWpm, worstWordWpmX, worstWordWpmY);
   text(worstWord, worstWordX, worstWordY);
 }
@@ -532,16 +672,21 @@ void firePauseMenuOption() {
     break;
   case 1: //save
     saveSession();
+    wordStatsJournal.compact(wordStats);
     isLessonSaved = true;
     pauseMenuOption += 1;
     break;
   case 2: //quit
+    // exit() returns until the end of the frame, so don't reset the stats
     exit();
+    break;
   case 3:
     currentLevel = 0;
     isLessonStarted = false;
     wordStats = defaultWordStats();
+    wordStatsJournal.appendReset(System.currentTimeMillis());
     unlockedWords = 0;
+    rebuildWordIndexes();
     pauseMenuOption = 0;
     typedWords = 0;
     resetSessionInfo();
@@ -556,37 +701,16 @@ void resetSessionInfo() {
   checkBuffer(true);
 }
 
+// Have the level and the unlocked words written to the session properties
 void saveSession() {
-  //update session properties
-  //(note that the Java Properties class does not support per-property comments
-  //and there's no easy way to add apache commons configuration to Processing
-  //therefore, we must update the "startBaseWords" property manually by finding it
-  //in the properties file and replacing it with one that contains the correct value
-  try {
-    BufferedReader file = createReader(sketchPath("/data/session.properties"));
-    String line;
-    StringBuffer inputBuffer = new StringBuffer();
-    while ((line = file.readLine()) != null) {
-      if (line.startsWith("session.unlockedWords")) {
-        inputBuffer.append("session.unlockedWords = " + unlockedWords);
-      } else if (line.startsWith("session.startLevel")) {
-        inputBuffer.append("session.startLevel = " + currentLevel);
-      } else {
-        inputBuffer.append(line);
-      }
-      inputBuffer.append('\n');
-    }
-    String inputStr = inputBuffer.toString();
-    file.close();
-    PrintWriter outfile = createWriter(sketchPath("/data/session.properties"));
-    outfile.print(inputStr);
-    outfile.close();
-  } 
-  catch (IOException e) {
-    println("Error writing session properties.");
-  }
-  //save wordstats
-  utils.saveWordStats(wordStats, sttDictionaryFilePath);
+  sessionSaver.saveSession(currentLevel, unlockedWords);
+  lastSaveTime = System.currentTimeMillis();
+}
+
+// Write what is still waiting to be saved before quitting
+void exit() {
+  if (sessionSaver != null) sessionSaver.close(2000);
+  super.exit();
 }
 
 // Get session average WPM
@@ -599,15 +723,23 @@ float getAverageWpm() {
 // compute the next word based on word stats. Also, if conditions to
 // level up are met, unlock new words.
 void checkBuffer(boolean forceNextWord) {
-  String word = dictionary.get(currentWordIndex).word;
-  if (lastFullWord.endsWith("{-|}")) {
-    word = word.substring(0, 1).toUpperCase() + word.substring(1);
+  String word = dictionary.getWord(currentWordIndex);
+  String capitalizedWord = word.substring(0, 1).toUpperCase() + word.substring(1);
+  String typedWord = buffer.trim();
+  boolean isTyped;
+  if (isNextWordCapitalized) {
+    isTyped = typedWord.equals(capitalizedWord);
+  } else {
+    isTyped = typedWord.equals(word) || (isLastWordCapitalized && typedWord.equals(capitalizedWord));
   }
-  if (buffer.trim().equals(word) || forceNextWord) {
-    lastFullWord = previousStroke.word;
+  if (isTyped || forceNextWord) {
+    isLastWordCapitalized = false;
     buffer = ""; // Clear input buffer
     long typeTime = System.currentTimeMillis();
-    wordStats.get(currentWordIndex).addSample(typeTime - lastTypedWordTime);
+    wordStats.addSample(currentWordIndex, typeTime - lastTypedWordTime);
+    wordStatsJournal.append(currentWordIndex, typeTime, typeTime - lastTypedWordTime);
+    wordStatsJournal.compactIfNeeded(wordStats);
+    wordStatsChanged(currentWordIndex);
     lastTypedWordTime = typeTime;
     typedWords++;
     checkLevelUp();
@@ -624,21 +756,15 @@ void checkBuffer(boolean forceNextWord) {
 
 // Update worst word WPM and String value
 void updateWorstWord() {
-  int worstWordIndex = 0;
+  int worstWordIndex = wordWpmIndex.worstWord();
   int tempWorstWordWpm = 500;
-  for (int i = 0; i < startBaseWords + unlockedWords; i++) {
-    if (wordsBlacklist.contains(dictionary.get(i).word)) {
-      continue;
-    }
-    WordStats stats = wordStats.get(i);
-    int wpm = (int) stats.getAvgWpm();
-    if (wpm < tempWorstWordWpm) {
-      worstWordIndex = i;
-      tempWorstWordWpm = wpm;
-    }
+  if (worstWordIndex >= 0 && wordWpmIndex.getWpm(worstWordIndex) < tempWorstWordWpm) {
+    tempWorstWordWpm = wordWpmIndex.getWpm(worstWordIndex);
+  } else {
+    worstWordIndex = 0;
   }
   worstWordWpm = tempWorstWordWpm;
-  worstWord = dictionary.get(worstWordIndex).word;
+  worstWord = dictionary.getWord(worstWordIndex);
 }
 
 // Check level up. If conditions to level up are met, unlock new
@@ -647,13 +773,8 @@ void checkLevelUp() {
   if ((int) (typedWords / (getElapsedTime() / 60000.0)) < minLevelUpTotalWpm) {
     return;
   }
-  for (int i = 0; i < startBaseWords + unlockedWords; i++) {
-    if (wordsBlacklist.contains(dictionary.get(i).word)) {
-      continue;
-    }
-    if (wordStats.get(i).getAvgWpm() < minLevelUpWordWpm) {
-      return;
-    }
+  if (wordWpmIndex.slowCount > 0) {
+    return;
   }
   levelUp();
 }
@@ -669,15 +790,17 @@ void levelUp() {
     return;
   }
   int i = totalWords;
+  int firstNewWord = totalWords;
   unlockedWords += incrementWords;
   if (startBaseWords + unlockedWords > dictionary.size()) unlockedWords = dictionary.size() - startBaseWords;
   while (totalWords < startBaseWords + unlockedWords && i < dictionary.size()) {
-    if (wordsBlacklist.contains(dictionary.get(i).word.trim())) {
+    if (blacklistedWords.get(i)) {
       unlockedWords++;
     }
     totalWords++;
     i++;
   }
+  activateWords(firstNewWord, startBaseWords + unlockedWords);
   currentLevel++;
 
   // Announce current level
@@ -700,25 +823,88 @@ void announceLessonCompleted() {
 
 // Announce current word
 void sayCurrentWord() {
-  say(dictionary.get(currentWordIndex).word);
+  say(dictionary.getWord(currentWordIndex));
+}
+
+// Rebuild the indexes over the lesson words, after the dictionary, the word
+// stats or the unlocked words changed as a whole
+void rebuildWordIndexes() {
+  wordSelector = createWordSelector(wordSelectorName, dictionary.size());
+  wordWpmIndex = new WordWpmIndex(dictionary.size(), minLevelUpWordWpm);
+  activeWordCount = 0;
+  activateWords(0, startBaseWords + unlockedWords);
+}
+
+// Make the unlocked words in the given index range available, skipping
+// blacklisted ones
+void activateWords(int from, int to) {
+  wordPoolChanged();
+  for (int i = from; i < min(to, dictionary.size()); i++) {
+    if (!blacklistedWords.get(i)) {
+      wordSelector.activate(i);
+      wordWpmIndex.set(i, wordStats.getAvgWpm(i));
+      activeWordCount++;
+    }
+  }
+}
+
+// Discard the target lines built ahead, as the words they were picked
+// from changed
+void wordPoolChanged() {
+  if (nextWordsBuffer != null) nextWordsBuffer.discardPlannedLines();
+}
+
+// Update the indexes after the stats of the given word changed
+void wordStatsChanged(int i) {
+  wordSelector.update(i);
+  if (wordSelector.isActive(i)) wordWpmIndex.set(i, wordStats.getAvgWpm(i));
 }
 
 // Get total unlocked words less blacklisted ones
 int getActualUnlockedWords() {
-  int result = 0;
-  for (int i = 0; i < startBaseWords + unlockedWords; i++) {
-    if (!wordsBlacklist.contains(dictionary.get(i).word)) {
-      result++;
+  return activeWordCount;
+}
+
+// Mark the dictionary words found in the blacklist, once the dictionary
+// and the blacklist have been read
+void resolveBlacklist() {
+  HashSet<String> words = new HashSet<String>(wordsBlacklist);
+  BitSet blacklistedIds = new BitSet(dictionary.wordCount);
+  for (int id = 0; id < dictionary.wordCount; id++) {
+    if (words.contains(dictionary.words[id])) blacklistedIds.set(id);
+  }
+  blacklistedWords = new BitSet(dictionary.size());
+  for (int i = 0; i < dictionary.size(); i++) {
+    if (blacklistedIds.get(dictionary.getWordId(i))) blacklistedWords.set(i);
+  }
+  blacklistedWordCount = blacklistedWords.cardinality();
+}
+
+// Add the word at the given lesson index to the blacklist and save it.
+// Every occurrence of the word in the lesson is blacklisted and, if
+// unlocked, no longer shown.
+void blacklistWord(int index) {
+  int id = dictionary.getWordId(index);
+  wordsBlacklist.add(dictionary.getWord(index));
+  sessionSaver.saveBlacklist(wordsBlacklist);
+  for (int i = 0; i < dictionary.size(); i++) {
+    if (blacklistedWords.get(i) || dictionary.getWordId(i) != id) continue;
+    blacklistedWords.set(i);
+    blacklistedWordCount++;
+    if (wordSelector.isActive(i)) {
+      wordPoolChanged();
+      wordSelector.deactivate(i);
+      wordWpmIndex.clear(i);
+      activeWordCount--;
     }
   }
-  return result;
 }
 
 //Make default values of stats for all words in dictionary
-ArrayList<WordStats> defaultWordStats() {
-  wordStats = new ArrayList<WordStats>();
+WordStatsStore defaultWordStats() {
+  wordStats = new WordStatsStore(dictionary.size(), wordAvgSamples);
   for (int i = 0; i < dictionary.size(); i++) {
-    wordStats.add(new WordStats(wordStartAvgWpm, wordAvgSamples));
+    wordStats.reset(i, wordStartAvgWpm);
   }
   return wordStats;
 }
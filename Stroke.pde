@@ -22,4 +22,31 @@ public class Stroke {
   String stroke = "";
   String word = "";
   boolean isDelete = false;
+  // The chords of stroke, -1 for any chord that isn't valid steno
+  int[] chords = new int[8];
+  int chordCount = 0;
+
+  // Copy the given stroke into this one
+  void set(Stroke other) {
+    stroke = other.stroke;
+    word = other.word;
+    isDelete = other.isDelete;
+    if (chords.length < other.chordCount) chords = new int[other.chords.length];
+    System.arraycopy(other.chords, 0, chords, 0, other.chordCount);
+    chordCount = other.chordCount;
+  }
+
+  // Parse stroke, with its chords separated by '/', into chords
+  void parseChords() {
+    chordCount = 0;
+    if (stroke.length() == 0) return;
+    int start = 0;
+    while (start <= stroke.length()) {
+      int end = stroke.indexOf('/', start);
+      if (end < 0) end = stroke.length();
+      if (chordCount == chords.length) chords = Arrays.copyOf(chords, chordCount * 2);
+      chords[chordCount++] = parseChord(stroke, start, end);
+      start = end + 1;
+    }
+  }
 }
\ No newline at end of file
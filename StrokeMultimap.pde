@@ -0,0 +1,95 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Maps each lesson word to its (stroke, category) pairs while the dictionary
+// is being built. The set of words is fixed up front, so every word gets an id
+// and the pairs are appended to flat arrays, chained per word.
+public class StrokeMultimap {
+  HashMap<String, Integer> wordIds;
+  // Distinct words, by id
+  String[] words;
+  int wordCount;
+
+  // First and last entry of each word, -1 if it has none
+  int[] first;
+  int[] last;
+
+  // Entries, each one linked to the next entry of the same word
+  String[] strokes;
+  String[] categories;
+  int[] next;
+  int size = 0;
+
+  StrokeMultimap(ArrayList<String> words) {
+    wordIds = new HashMap<String, Integer>(words.size() * 4 / 3 + 1);
+    this.words = new String[words.size()];
+    for (String word : words) {
+      if (!wordIds.containsKey(word)) {
+        wordIds.put(word, wordCount);
+        this.words[wordCount++] = word;
+      }
+    }
+    first = new int[wordIds.size()];
+    last = new int[wordIds.size()];
+    Arrays.fill(first, -1);
+    Arrays.fill(last, -1);
+    int capacity = max(16, wordIds.size() * 4);
+    strokes = new String[capacity];
+    categories = new String[capacity];
+    next = new int[capacity];
+  }
+
+  boolean containsWord(String word) {
+    return wordIds.containsKey(word);
+  }
+
+  int getWordId(String word) {
+    return wordIds.get(word);
+  }
+
+  // Add a stroke to the given word, which must be one of the lesson words
+  void add(String word, String stroke, String category) {
+    int id = wordIds.get(word);
+    if (size == strokes.length) {
+      strokes = Arrays.copyOf(strokes, size * 2);
+      categories = Arrays.copyOf(categories, size * 2);
+      next = Arrays.copyOf(next, size * 2);
+    }
+    strokes[size] = stroke;
+    categories[size] = category;
+    next[size] = -1;
+    if (last[id] < 0) {
+      first[id] = size;
+    } else {
+      next[last[id]] = size;
+    }
+    last[id] = size;
+    size++;
+  }
+
+  // Add the outlines of the word with the given id to the dictionary.
+  // Strokes that are not valid steno are dropped.
+  void addOutlines(int id, Dictionary dictionary) {
+    for (int entry = first[id]; entry >= 0; entry = next[entry]) {
+      int[] outline = parseOutline(strokes[entry]);
+      if (outline == null) continue;
+      dictionary.addOutline(outline, dictionary.categoryFlags(categories[entry]));
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.nio.charset.StandardCharsets;
+
+// Parses Plover log lines straight from the bytes read from the log.
+// Lines look like this:
+//   2017-09-21 12:45:00,123 Translation(('HEL', 'HRO') : "hello")
+// and undo lines have a '*' just before "Translation".
+// Strokes and words are looked up in string caches, so a line that only
+// contains already seen strokes and words doesn't allocate anything.
+public class StrokeParser {
+  byte[] translation = {'T', 'r', 'a', 'n', 's', 'l', 'a', 't', 'i', 'o', 'n'};
+  byte[] separator = {')', ' ', ':', ' '};
+
+  // Used to join multiple strokes with '/'
+  byte[] strokeBytes = new byte[64];
+
+  StringCache strokeCache = new StringCache(1024);
+  StringCache wordCache = new StringCache(1024);
+
+  // Parse the line stored in the given byte range into the given stroke.
+  // Returns false, leaving the stroke untouched, if it isn't a translation.
+  boolean parse(byte[] line, int start, int end, Stroke stroke) {
+    if (end > start && line[end - 1] == '\r') end--;
+    int indexOfTransl = indexOf(line, start, end, translation);
+    if (indexOfTransl <= start) return false;
+    int indexOfLast = indexOf(line, start, end, separator);
+    int strokeStart = indexOfTransl + 14;
+    int strokeEnd = indexOfLast - 1;
+    if (indexOfLast < 0 || strokeEnd - 1 < strokeStart || indexOfLast + 5 > end - 2) return false;
+    if (line[strokeEnd - 1] == '\'') strokeEnd--;
+
+    // Copy strokes, replacing each "', '" separator with a '/'
+    int length = 0;
+    for (int i = strokeStart; i < strokeEnd; i++) {
+      if (length == strokeBytes.length) strokeBytes = Arrays.copyOf(strokeBytes, length * 2);
+      if (line[i] == '\'' && i + 3 < strokeEnd && line[i + 1] == ',' && line[i + 2] == ' ' && line[i + 3] == '\'') {
+        strokeBytes[length++] = '/';
+        i += 3;
+      } else {
+        strokeBytes[length++] = line[i];
+      }
+    }
+
+    stroke.isDelete = line[indexOfTransl - 1] == '*';
+    stroke.stroke = strokeCache.get(strokeBytes, 0, length);
+    stroke.parseChords();
+    stroke.word = wordCache.get(line, indexOfLast + 5, end - 2);
+    return true;
+  }
+
+  // Index of the first occurrence of target in the given byte range, or -1
+  int indexOf(byte[] bytes, int start, int end, byte[] target) {
+    for (int i = start; i <= end - target.length; i++) {
+      int j = 0;
+      while (j < target.length && bytes[i + j] == target[j]) j++;
+      if (j == target.length) return i;
+    }
+    return -1;
+  }
+}
+
+// Fixed size cache of strings decoded from UTF-8 bytes. When a slot is
+// already taken by another string, the older one is simply replaced.
+public class StringCache {
+  byte[][] keys;
+  String[] values;
+  int mask;
+
+  // The size is rounded up to a power of two
+  StringCache(int size) {
+    int capacity = 1;
+    while (capacity < size) capacity <<= 1;
+    keys = new byte[capacity][];
+    values = new String[capacity];
+    mask = capacity - 1;
+  }
+
+  // Return the string encoded in the given byte range
+  String get(byte[] bytes, int start, int end) {
+    int hash = 1;
+    for (int i = start; i < end; i++) hash = 31 * hash + bytes[i];
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    byte[] key = keys[slot];
+    if (key != null && key.length == end - start) {
+      boolean equal = true;
+      for (int i = 0; i < key.length && equal; i++) equal = key[i] == bytes[start + i];
+      if (equal) return values[slot];
+    }
+    keys[slot] = Arrays.copyOfRange(bytes, start, end);
+    values[slot] = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    return values[slot];
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded lock-free queue handing strokes from the Plover log reader
+// thread to the animation thread. There is exactly one producer and one
+// consumer, so the head and tail counters are each written by one thread only.
+// The strokes are preallocated: the producer fills the next free slot in
+// place and the consumer copies what it needs before releasing it.
+public class StrokeQueue {
+  Stroke[] slots;
+  int mask;
+
+  // Next slot to read, only written by the consumer
+  AtomicLong head = new AtomicLong(0);
+  // Next slot to write, only written by the producer
+  AtomicLong tail = new AtomicLong(0);
+
+  // The capacity is rounded up to a power of two
+  StrokeQueue(int capacity) {
+    int size = 1;
+    while (size < capacity) size <<= 1;
+    slots = new Stroke[size];
+    for (int i = 0; i < size; i++) slots[i] = new Stroke();
+    mask = size - 1;
+  }
+
+  // Return the slot to fill with the next stroke, or null if the queue is full
+  Stroke claim() {
+    long t = tail.get();
+    if (t - head.get() == slots.length) return null;
+    return slots[(int) t & mask];
+  }
+
+  // Hand the claimed slot over to the consumer
+  void publish() {
+    tail.lazySet(tail.get() + 1);
+  }
+
+  // Return the oldest stroke without removing it, or null if the queue is empty
+  Stroke peek() {
+    long h = head.get();
+    if (h == tail.get()) return null;
+    return slots[(int) h & mask];
+  }
+
+  // Remove the oldest stroke. Its slot may be overwritten right after this.
+  void release() {
+    head.lazySet(head.get() + 1);
+  }
+}
@@ -20,50 +20,57 @@
  */
 
 import java.util.ArrayList;
+import java.util.zip.CRC32;
 
 // Provides various helper methods
 public class Utils {
 
-  // Read WordStats dictionary
-  public ArrayList<WordStats> readWordStats(String sttDictionaryFilePath, int averageSamples) {
-    ArrayList<WordStats> wordStats = new ArrayList<WordStats>();
-    File f = new File(sttDictionaryFilePath);
-    if (f.exists()) {
-      JSONArray encodedStats = loadJSONArray(sttDictionaryFilePath);
-      for (int i = 0; i < encodedStats.size(); i++) {
-        JSONObject oneWord = encodedStats.getJSONObject(i);
-        JSONArray encodedTypeTimes = oneWord.getJSONArray("typeTimes");
-        long[] typeTimes = new long[encodedTypeTimes.size()];
-        for (int j = 0; j < encodedTypeTimes.size(); j++) {
-          typeTimes[j] = encodedTypeTimes.getLong(j);
-        }
-        wordStats.add(new WordStats(averageSamples, typeTimes));
-      }
+  // Stable 64 bit identity of a lesson word, given how many times it occurs
+  // earlier in the lesson. Word stats are stored by key rather than by
+  // lesson index, so they follow their word when the lesson is edited.
+  long wordKey(String word, int occurrence) {
+    // FNV-1a, then the murmur3 finalizer to spread the occurrence
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < word.length(); i++) {
+      hash ^= word.charAt(i);
+      hash *= 0x100000001b3L;
     }
-    return wordStats;
+    hash += occurrence * 0x9e3779b97f4a7c15L;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb93e63a5c5ecL;
+    hash ^= hash >>> 33;
+    return hash;
   }
 
-  public void saveWordStats(ArrayList<WordStats> wordStats, String sttDictionaryFilePath) {
-    JSONArray encodedStats = new JSONArray();
-    for (int i = 0; i < wordStats.size(); i++) {
-      WordStats thisWord = wordStats.get(i);
-      JSONObject oneWord = new JSONObject();
-      JSONArray encodedTypeTimes = new JSONArray();
-      int k = 0;
-      for (int j = 0; j < thisWord.typeTime.length; j++) {
-        long time = thisWord.typeTime[(j + thisWord.nextSample)%thisWord.typeTime.length];
-        if (time>0) {
-          encodedTypeTimes.setLong(k++, time);
-        }
+  // CRC32 of the file content, or -1 if it cannot be read
+  long checksum(File f) {
+    if (!f.exists()) return -1;
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+      ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+      CRC32 crc = new CRC32();
+      while (channel.read(buffer) > 0) {
+        buffer.flip();
+        crc.update(buffer.array(), 0, buffer.limit());
+        buffer.clear();
+      }
+      return crc.getValue();
+    }
+    catch (IOException e) {
+      return -1;
+    }
+    finally {
+      try {
+        if (channel != null) channel.close();
+      }
+      catch (IOException e) {
       }
-      oneWord.setJSONArray("typeTimes", encodedTypeTimes);
-      encodedStats.setJSONObject(i, oneWord);
     }
-    saveJSONArray(encodedStats, sttDictionaryFilePath, "compact");
   }
 
-  
-
   // Read lesson blacklist (if any) and add blacklisted words
   // to the returned list
   ArrayList<String> readBlacklist(String blkDictionaryFilePath) {
@@ -97,7 +104,6 @@ public class Utils {
 
   // Store blacklist data in given file
   void writeBlacklist(ArrayList<String> wordsBlacklist, String blkDictionaryFilePath) {
-    BufferedWriter blkWriter = null;
     StringBuilder blacklist = new StringBuilder();
     for (String word : wordsBlacklist) {
       blacklist.append(word + " ");
@@ -105,74 +111,26 @@ public class Utils {
     String fileContent = blacklist.toString();
     fileContent = fileContent.substring(0, fileContent.length() - 1);
     try {
-      Writer writer = new FileWriter(blkDictionaryFilePath);
-      blkWriter = new BufferedWriter(writer);
-      blkWriter.write(fileContent);
+      writeFileAtomically(blkDictionaryFilePath, fileContent);
     }
     catch (Exception e) {
       println("Error while writing blacklist file:" + e.getMessage());
     }
-    if (blkWriter != null) {
-      try {
-        blkWriter.close();
-      } 
-      catch (Exception e) {
-      }
-    }
   }
 
-  // Initialize Plover log reader and go to end of file
-  public BufferedReader loadPloverLogs(String logFilePath) {
-    BufferedReader logReader = null;
+  // Replace the content of a file. The content is written aside and then
+  // renamed, so that a half written file is never read.
+  void writeFileAtomically(String filePath, String content) throws IOException {
+    File temp = new File(filePath + ".tmp");
     try {
-      Reader reader = new FileReader(logFilePath);
-      logReader = new BufferedReader(reader);
-    }
-    catch (Exception e) {
-      println("Error while reading Plover log file: " + e.getMessage());
+      Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+      Files.move(temp.toPath(), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
-    return logReader;
-  }
-
-  // Get next stroke from Plover log file
-  public Stroke getNextStroke(BufferedReader logReader) {
-    Stroke stroke = new Stroke();
-    String line = null;
-    try {
-      String l;
-      while ((l = logReader.readLine()) != null) line = l; 
-      int indexOfTransl = -1;
-      if (line != null) indexOfTransl = line.indexOf("Translation");
-      if (line != null && indexOfTransl > -1) {
-        int indexOfLast = line.indexOf(") : ");
-        stroke.isDelete = (line.charAt(indexOfTransl-1)=='*');
-        stroke.stroke = getStroke(line, indexOfTransl + 14, indexOfLast - 1);
-        stroke.word = line.substring(indexOfLast + 5, line.length() - 2);
-        return stroke;
-      } else {
-        return null;
-      }
-    } 
-    catch (Exception e) {
-      println("Error while reading stroke from Plover log file: " + e.getMessage()); //<>//
+    finally {
+      temp.delete();
     }
-    return null;
   }
 
-  // Format strokes and multiple strokes for a single word.
-  public String getStroke(String line, int start, int end) {
-    String result = "";
-    if (line.charAt(end-1)=='\'') end--;
-    String strokeLine = line.substring(start, end);
-    String[] strokes = strokeLine.split("', '");
-    for (String stroke : strokes) result += stroke + "/";
-    return result.substring(0, result.length() - 1);
-  }
-
-  public final long longmap(long value, long start1, long stop1, long start2, long stop2) {
-    return start2 + (stop2 - start2) * ((value - start1) / (stop1 - start1));
-  }
-  
   //https://stackoverflow.com/a/275969/3115788
   public final int countOccurences(String haystack, char needle) {
     int count = 0;
@@ -0,0 +1,57 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Hash table from word keys to their position in a list of keys, like the
+// lesson words or the words of a stats file, so that two lists can be
+// matched in O(n). It uses open addressing over the low bits of the keys,
+// which are hashes already. When a key repeats, the first position wins.
+public class WordKeyTable {
+  long[] keys;
+  // Position of the key in each slot, -1 for an empty slot
+  int[] positions;
+  int mask;
+
+  WordKeyTable(long[] wordKeys, int count) {
+    int capacity = 2;
+    while (capacity < count * 2) capacity <<= 1;
+    keys = new long[capacity];
+    positions = new int[capacity];
+    Arrays.fill(positions, -1);
+    mask = capacity - 1;
+    for (int i = 0; i < count; i++) {
+      int slot = find(wordKeys[i]);
+      if (positions[slot] < 0) {
+        keys[slot] = wordKeys[i];
+        positions[slot] = i;
+      }
+    }
+  }
+
+  // Position of the given key, or -1 if it isn't in the list
+  int get(long key) {
+    return positions[find(key)];
+  }
+
+  // Slot holding the given key, or the empty slot where it would go
+  int find(long key) {
+    int slot = (int) key & mask;
+    while (positions[slot] >= 0 && keys[slot] != key) slot = (slot + 1) & mask;
+    return slot;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Priority queue of lesson words by a long key, the lowest key first and
+// the lowest word index on ties. It is a binary heap that also knows where
+// each word is, so the key of any word can be changed or the word removed
+// in O(log n).
+public class WordQueue {
+  int[] heap;
+  int size = 0;
+  // Position of each word in the heap, -1 if not queued
+  int[] positions;
+  long[] keys;
+
+  WordQueue(int capacity) {
+    heap = new int[capacity];
+    positions = new int[capacity];
+    keys = new long[capacity];
+    Arrays.fill(positions, -1);
+  }
+
+  boolean contains(int word) {
+    return positions[word] >= 0;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  // Word with the lowest key, the queue must not be empty
+  int first() {
+    return heap[0];
+  }
+
+  long get(int word) {
+    return keys[word];
+  }
+
+  // Queue the given word with the given key, or change its key if queued
+  void set(int word, long key) {
+    keys[word] = key;
+    int position = positions[word];
+    if (position < 0) {
+      position = size++;
+      heap[position] = word;
+      positions[word] = position;
+    }
+    siftDown(siftUp(position));
+  }
+
+  void remove(int word) {
+    int position = positions[word];
+    if (position < 0) return;
+    positions[word] = -1;
+    size--;
+    if (position == size) return;
+    int last = heap[size];
+    heap[position] = last;
+    positions[last] = position;
+    siftDown(siftUp(position));
+  }
+
+  boolean isBefore(int word, int other) {
+    return keys[word] < keys[other] || (keys[word] == keys[other] && word < other);
+  }
+
+  // Move the word at the given position up while it comes before its
+  // parent, and return its new position
+  int siftUp(int position) {
+    int word = heap[position];
+    while (position > 0) {
+      int parent = (position - 1) / 2;
+      if (!isBefore(word, heap[parent])) break;
+      heap[position] = heap[parent];
+      positions[heap[position]] = position;
+      position = parent;
+    }
+    heap[position] = word;
+    positions[word] = position;
+    return position;
+  }
+
+  // Move the word at the given position down while a child comes before it
+  void siftDown(int position) {
+    int word = heap[position];
+    while (true) {
+      int child = position * 2 + 1;
+      if (child >= size) break;
+      if (child + 1 < size && isBefore(heap[child + 1], heap[child])) child++;
+      if (!isBefore(heap[child], word)) break;
+      heap[position] = heap[child];
+      positions[heap[position]] = position;
+      position = child;
+    }
+    heap[position] = word;
+    positions[word] = position;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Picks lesson words at random, slow-typed words being more likely than
+// fast-typed ones. The weight of a word grows linearly with its penalty,
+// from 1 at the lowest penalty to 100 at the highest one. Only active words,
+// that is unlocked and not blacklisted, can be picked.
+//
+// Weights are never stored: since a + b * penalty summed over any set of
+// words is a * count + b * penaltySum, two Fenwick trees of counts and
+// penalties are enough. Updating a word and picking one both take O(log n),
+// and a change of the penalty range costs nothing. The penalty range of
+// the active words is kept in a MinMaxTree, so it is always at hand.
+public class WordSampler {
+  int size;
+  boolean[] active;
+  long[] penalties;
+
+  // Fenwick trees, 1-based
+  int[] countTree;
+  double[] penaltyTree;
+  int highestStep = 1;
+
+  // Lowest and highest penalty of the active words
+  MinMaxTree penaltyRange;
+
+  // Totals over the active words
+  int activeCount = 0;
+  double penaltySum = 0;
+
+  WordSampler(int size) {
+    this.size = size;
+    active = new boolean[size];
+    penalties = new long[size];
+    countTree = new int[size + 1];
+    penaltyTree = new double[size + 1];
+    while (highestStep * 2 <= size) highestStep *= 2;
+    penaltyRange = new MinMaxTree(size);
+  }
+
+  boolean isActive(int word) {
+    return active[word];
+  }
+
+  // Make the given word available to be picked
+  void activate(int word, long penalty) {
+    if (active[word]) return;
+    active[word] = true;
+    penalties[word] = penalty;
+    add(word, 1, penalty);
+    penaltyRange.set(word, penalty);
+  }
+
+  // Stop picking the given word
+  void deactivate(int word) {
+    if (!active[word]) return;
+    active[word] = false;
+    add(word, -1, -penalties[word]);
+    penaltyRange.clear(word);
+  }
+
+  // Set the penalty of the given word
+  void update(int word, long penalty) {
+    if (active[word]) {
+      add(word, 0, penalty - penalties[word]);
+      penaltyRange.set(word, penalty);
+    }
+    penalties[word] = penalty;
+  }
+
+  void add(int word, int count, double penalty) {
+    activeCount += count;
+    penaltySum += penalty;
+    for (int i = word + 1; i <= size; i += i & -i) {
+      countTree[i] += count;
+      penaltyTree[i] += penalty;
+    }
+  }
+
+  // Pick an active word other than excludedWord, mapping a random number in
+  // [0, 1) to a word. Penalties are mapped to weights assuming they lie
+  // between minPenalty and maxPenalty. If there is no other active word,
+  // excludedWord itself is returned.
+  int pick(double random, long minPenalty, long maxPenalty, int excludedWord) {
+    boolean exclude = excludedWord >= 0 && excludedWord < size && active[excludedWord];
+    if (exclude) add(excludedWord, -1, -penalties[excludedWord]);
+    int result = excludedWord;
+    if (activeCount > 0) {
+      double scale = 99 / (double) Math.max(1L, maxPenalty - minPenalty);
+      double target = random * (activeCount + scale * (penaltySum - activeCount * (double) minPenalty));
+
+      // Walk down the tree, skipping every subtree whose weight is below target
+      int position = 0;
+      for (int step = highestStep; step > 0; step >>= 1) {
+        int next = position + step;
+        if (next > size) continue;
+        double weight = countTree[next] + scale * (penaltyTree[next] - countTree[next] * (double) minPenalty);
+        if (weight <= target) {
+          position = next;
+          target -= weight;
+        }
+      }
+      result = nearestActive(position);
+    }
+    if (exclude) add(excludedWord, 1, penalties[excludedWord]);
+    return result;
+  }
+
+  // Lowest penalty of the active words, 0 if there are none
+  long minPenalty() {
+    return penaltyRange.isEmpty() ? 0 : penalties[penaltyRange.minWord()];
+  }
+
+  // Highest penalty of the active words, 0 if there are none
+  long maxPenalty() {
+    return penaltyRange.isEmpty() ? 0 : penalties[penaltyRange.maxWord()];
+  }
+
+  // The given word if active, otherwise the closest active one. Rounding
+  // errors can make the tree walk stop just past the last active word.
+  int nearestActive(int word) {
+    for (int i = min(word, size - 1); i >= 0; i--) {
+      if (active[i]) return i;
+    }
+    for (int i = word + 1; i < size; i++) {
+      if (active[i]) return i;
+    }
+    return -1;
+  }
+}
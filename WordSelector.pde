@@ -0,0 +1,87 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Chooses the words of the target lines among the active ones, that is the
+// unlocked words that aren't blacklisted. Selectors read the stats of the
+// words themselves, and are told when a word becomes active or inactive and
+// when its stats change. session.wordSelector chooses which one is used.
+public interface WordSelector {
+  // Make the given word available to be chosen
+  void activate(int word);
+
+  // Stop choosing the given word
+  void deactivate(int word);
+
+  // The stats of the given word changed
+  void update(int word);
+
+  boolean isActive(int word);
+
+  // Choose the word following previousWord, another word if possible
+  int next(int previousWord);
+}
+
+// Create the selector named in the session configuration
+WordSelector createWordSelector(String name, int size) {
+  if (name.equals("spaced")) {
+    return new SpacedRepetitionSelector(size, 60000 / max(1, minLevelUpWordWpm));
+  }
+  if (name.equals("bigram")) {
+    return new BigramWordSelector(size, sessionRandom.split());
+  }
+  if (!name.equals("penalty")) {
+    println("Warning: unknown word selector " + name + ", using penalty.");
+  }
+  return new PenaltyWordSelector(size, sessionRandom.split());
+}
+
+// Random selection weighted by word penalty, slow-typed words showing up
+// more often than fast-typed ones
+public class PenaltyWordSelector implements WordSelector {
+  WordSampler sampler;
+  SplittableRandom random;
+
+  PenaltyWordSelector(int size, SplittableRandom random) {
+    sampler = new WordSampler(size);
+    this.random = random;
+  }
+
+  public void activate(int word) {
+    sampler.activate(word, wordStats.getWordPenalty(word));
+  }
+
+  public void deactivate(int word) {
+    sampler.deactivate(word);
+  }
+
+  public void update(int word) {
+    sampler.update(word, wordStats.getWordPenalty(word));
+  }
+
+  public boolean isActive(int word) {
+    return sampler.isActive(word);
+  }
+
+  public int next(int previousWord) {
+    long minPenalty = sampler.minPenalty();
+    long maxPenalty = sampler.maxPenalty();
+    if (minPenalty == maxPenalty) maxPenalty += 1;
+    return sampler.pick(random.nextDouble(), minPenalty, maxPenalty, previousWord);
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Word stats file, stored in /data/lessons with the same name of the
+// corresponding lesson file but with .stt extension.
+//
+// Binary layout, big endian:
+//   int magic, int version, int samples per word, int word count
+//   then the key of each word, see Utils.wordKey()
+//   then the samples of each word as longs, oldest first, -1 if missing
+// Words are stored by key rather than in lesson order, so the stats are
+// matched to the lesson words when they are loaded, and stay with their
+// word when the lesson is reordered or words are added to it. The file is
+// read while the lesson loads and joined to it once both are done.
+//
+// Version 1 files stored the words themselves after the samples, and the
+// files written before that are JSON arrays of {"typeTimes": [...]}
+// objects in lesson order. Both are read as well, and replaced by the
+// current format at the next save.
+public class WordStatsFile {
+  final int magic = 0x53545354; // "STST"
+  final int version = 2;
+  final int headerSize = 16;
+
+  String filePath;
+
+  // Read from the file: the key of each word, or null if they are in lesson
+  // order, and their samples, oldest first
+  int size = 0;
+  int averageSamples = 1;
+  long[] keys;
+  long[] samples = new long[0];
+
+  WordStatsFile(String filePath) {
+    this.filePath = filePath;
+  }
+
+  // Read the stats, if there is a file
+  void read() {
+    File f = new File(filePath);
+    if (!f.exists()) return;
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+      ByteBuffer header = ByteBuffer.allocate(headerSize);
+      read(channel, header, 0);
+      header.flip();
+      if (header.remaining() < headerSize || header.getInt() != magic) {
+        channel.close();
+        channel = null;
+        readJson();
+        return;
+      }
+      int fileVersion = header.getInt();
+      if (fileVersion != 1 && fileVersion != version) throw new IOException("unknown version");
+      int fileSamples = header.getInt();
+      int fileSize = header.getInt();
+      int keysSize = fileVersion == 1 ? 0 : fileSize;
+      if (fileSamples <= 0 || fileSize < 0 || headerSize + ((long) fileSize * fileSamples + keysSize) * 8 > channel.size()) {
+        throw new IOException("truncated file");
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size() - headerSize);
+      read(channel, buffer, headerSize);
+      buffer.flip();
+      long[] fileKeys = new long[fileSize];
+      long[] fileSampleArray = new long[fileSize * fileSamples];
+      if (fileVersion != 1) {
+        buffer.asLongBuffer().get(fileKeys);
+        buffer.position(keysSize * 8);
+      }
+      buffer.asLongBuffer().get(fileSampleArray);
+      if (fileVersion == 1) {
+        buffer.position(fileSampleArray.length * 8);
+        readWords(buffer, fileKeys);
+      }
+      size = fileSize;
+      averageSamples = fileSamples;
+      keys = fileKeys;
+      samples = fileSampleArray;
+    }
+    catch (IOException e) {
+      println("Error while reading word stats: " + e.getMessage());
+    }
+    finally {
+      try {
+        if (channel != null) channel.close();
+      }
+      catch (IOException e) {
+      }
+    }
+  }
+
+  // Read the whole buffer from the given position of the file, or up to its end
+  void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) break;
+      position += read;
+    }
+  }
+
+  // Key the words stored by version 1 files, as unsigned short lengths
+  // followed by UTF-8 bytes, in lesson order
+  void readWords(ByteBuffer buffer, long[] fileKeys) throws IOException {
+    HashMap<String, Integer> occurrences = new HashMap<String, Integer>();
+    for (int i = 0; i < fileKeys.length; i++) {
+      if (buffer.remaining() < 2) throw new IOException("truncated file");
+      int length = buffer.getShort() & 0xffff;
+      if (buffer.remaining() < length) throw new IOException("truncated file");
+      String word = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+      Integer occurrence = occurrences.get(word);
+      int count = occurrence == null ? 0 : occurrence;
+      occurrences.put(word, count + 1);
+      fileKeys[i] = utils.wordKey(word, count);
+    }
+  }
+
+  // Read a stats file written by older versions, in lesson order. Binary
+  // files too damaged to show their magic number end up here as well.
+  void readJson() {
+    try {
+      JSONArray encodedStats = loadJSONArray(filePath);
+      int fileSamples = 1;
+      for (int i = 0; i < encodedStats.size(); i++) {
+        fileSamples = max(fileSamples, encodedStats.getJSONObject(i).getJSONArray("typeTimes").size());
+      }
+      long[] fileSampleArray = new long[encodedStats.size() * fileSamples];
+      Arrays.fill(fileSampleArray, -1);
+      for (int i = 0; i < encodedStats.size(); i++) {
+        JSONArray encodedTypeTimes = encodedStats.getJSONObject(i).getJSONArray("typeTimes");
+        int start = (i + 1) * fileSamples - encodedTypeTimes.size();
+        for (int j = 0; j < encodedTypeTimes.size(); j++) {
+          fileSampleArray[start + j] = encodedTypeTimes.getLong(j);
+        }
+      }
+      size = encodedStats.size();
+      averageSamples = fileSamples;
+      samples = fileSampleArray;
+      keys = null;
+    }
+    catch (RuntimeException e) {
+      println("Error while reading word stats: " + e.getMessage());
+    }
+  }
+
+  // Match the stats read to the lesson words by key, in O(n). Lesson words
+  // without stats get a low performance record.
+  WordStatsStore join(int wordAverageSamples, int startAverageWpm) {
+    WordStatsStore wordStats = new WordStatsStore(dictionary.size(), wordAverageSamples);
+    WordKeyTable rows = keys == null ? null : new WordKeyTable(keys, size);
+    boolean isSameRing = averageSamples == wordAverageSamples;
+    long[] typeTimes = new long[averageSamples];
+    for (int i = 0; i < dictionary.size(); i++) {
+      int row = rows == null ? (i < size ? i : -1) : rows.get(dictionary.getWordKey(i));
+      if (row < 0) {
+        wordStats.reset(i, startAverageWpm);
+      } else if (isSameRing) {
+        System.arraycopy(samples, row * averageSamples, wordStats.samples, i * averageSamples, averageSamples);
+      } else {
+        System.arraycopy(samples, row * averageSamples, typeTimes, 0, averageSamples);
+        wordStats.setSamples(i, typeTimes, startAverageWpm);
+      }
+    }
+    if (isSameRing) wordStats.updateSums(startAverageWpm);
+    return wordStats;
+  }
+
+  // Write the stats of the lesson words. The file is written aside and then
+  // renamed, so that a half written file is never read. Returns false if it
+  // failed.
+  boolean save(WordStatsStore wordStats) {
+    File temp = new File(filePath + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      out.writeInt(magic);
+      out.writeInt(version);
+      out.writeInt(wordStats.averageSamples);
+      out.writeInt(wordStats.size());
+      for (int i = 0; i < wordStats.size(); i++) out.writeLong(dictionary.getWordKey(i));
+      for (int i = 0; i < wordStats.size(); i++) {
+        for (int j = 0; j < wordStats.averageSamples; j++) out.writeLong(wordStats.getSample(i, j));
+      }
+      out.close();
+      out = null;
+      Files.move(temp.toPath(), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    }
+    catch (IOException e) {
+      println("Error while saving word stats: " + e.getMessage());
+      return false;
+    }
+    finally {
+      try {
+        if (out != null) out.close();
+      }
+      catch (IOException e) {
+      }
+      temp.delete();
+    }
+  }
+}
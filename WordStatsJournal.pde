@@ -0,0 +1,295 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Append-only record of the word samples typed since the word stats file
+// was last written. Every typed word appends a fixed size record, which the
+// session saver forces to disk every second, so a crash loses at most the
+// last few samples while saving a sample costs the same however big the
+// lesson is. At startup the journal is replayed over the stats file. When
+// the session is saved, or once the journal grows past compactionSize, the
+// session saver writes the stats to the stats file and the journal starts
+// over.
+//
+// Binary layout, big endian:
+//   int magic, int version, long checksum of the stats file it follows
+//   then records of long word key, long time, long typing time in milliseconds
+// where a negative typing time marks a reset of all the stats. Words are
+// recorded by key, like in the stats file, so that records written before
+// the lesson was edited still apply to the right words. A journal whose
+// checksum doesn't match the stats file was written before the stats were
+// saved, so it is already part of them and is ignored. Version 1 journals
+// recorded int lesson indices instead of keys, and are converted when
+// opened.
+public class WordStatsJournal {
+  final int magic = 0x53544a4c; // "STJL"
+  final int version = 2;
+  final int headerSize = 16;
+  final int recordSize = 24;
+  final int oldRecordSize = 20;
+
+  // Journal size that triggers a compaction
+  long compactionSize = 1024 * 1024;
+
+  String journalFilePath;
+  String statsFilePath;
+  FileChannel channel;
+  ByteBuffer record = ByteBuffer.allocate(recordSize);
+  // Size of the journal
+  long size = 0;
+
+  boolean hasUnforcedRecords = false;
+  // Whether stats are waiting to be written by the session saver
+  boolean isCompacting = false;
+  // Stats to write once the running compaction is done, with the end of
+  // the records they include, null if none
+  WordStatsStore pendingSnapshot;
+  long pendingSnapshotEnd;
+
+  WordStatsJournal(String journalFilePath, String statsFilePath) {
+    this.journalFilePath = journalFilePath;
+    this.statsFilePath = statsFilePath;
+  }
+
+  // Apply the journal to the stats read from the stats file, then get ready
+  // to append to it
+  synchronized void open(WordStatsStore wordStats, int startAverageWpm) {
+    long statsChecksum = utils.checksum(new File(statsFilePath));
+    try {
+      channel = FileChannel.open(Paths.get(journalFilePath), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long end = replay(wordStats, startAverageWpm, statsChecksum);
+      if (end < 0) {
+        start(channel, statsChecksum);
+        size = headerSize;
+      } else {
+        // Drop a record half written by a crash
+        channel.truncate(end);
+        channel.position(end);
+        size = end;
+      }
+    }
+    catch (IOException e) {
+      println("Warning: cannot open word stats journal, samples are only saved with the session. " + e.getMessage());
+      close();
+    }
+  }
+
+  // Apply the records of the journal and return where they end, or -1 if
+  // the journal doesn't follow the given stats file
+  long replay(WordStatsStore wordStats, int startAverageWpm, long statsChecksum) throws IOException {
+    if (channel.size() < headerSize) return -1;
+    ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, buffer.position()) < 0) break;
+    }
+    buffer.flip();
+    if (buffer.getInt() != magic) return -1;
+    int fileVersion = buffer.getInt();
+    if ((fileVersion != 1 && fileVersion != version) || buffer.getLong() != statsChecksum) return -1;
+    if (fileVersion == 1) return upgrade(buffer, statsChecksum, wordStats, startAverageWpm);
+    WordKeyTable lessonWords = new WordKeyTable(dictionary.lessonKeys, dictionary.size());
+    while (buffer.remaining() >= recordSize) {
+      long key = buffer.getLong();
+      buffer.getLong();
+      long duration = buffer.getLong();
+      if (duration < 0) {
+        for (int i = 0; i < wordStats.size(); i++) wordStats.reset(i, startAverageWpm);
+      } else {
+        int word = lessonWords.get(key);
+        if (word >= 0 && word < wordStats.size()) wordStats.addSample(word, duration);
+      }
+    }
+    return buffer.position();
+  }
+
+  // Apply the records of a version 1 journal, where word -1 marked a reset,
+  // then replace it with the same records keyed by word. Returns where they
+  // end.
+  long upgrade(ByteBuffer buffer, long statsChecksum, WordStatsStore wordStats, int startAverageWpm) throws IOException {
+    ByteBuffer records = ByteBuffer.allocate(buffer.remaining() / oldRecordSize * recordSize);
+    while (buffer.remaining() >= oldRecordSize) {
+      int word = buffer.getInt();
+      long time = buffer.getLong();
+      long duration = buffer.getLong();
+      if (word == -1) {
+        for (int i = 0; i < wordStats.size(); i++) wordStats.reset(i, startAverageWpm);
+        records.putLong(0).putLong(time).putLong(-1);
+      } else if (word >= 0 && word < wordStats.size()) {
+        wordStats.addSample(word, duration);
+        records.putLong(dictionary.getWordKey(word)).putLong(time).putLong(duration);
+      }
+    }
+    records.flip();
+    File temp = new File(journalFilePath + ".tmp");
+    FileChannel journal = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      start(journal, statsChecksum);
+      while (records.hasRemaining()) journal.write(records);
+      journal.force(false);
+      channel.close();
+      Files.move(temp.toPath(), Paths.get(journalFilePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      channel = journal;
+      journal = null;
+    }
+    finally {
+      if (journal != null) journal.close();
+      temp.delete();
+    }
+    return channel.position();
+  }
+
+  // Write the header of an empty journal following the given stats file
+  void start(FileChannel journal, long statsChecksum) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(headerSize);
+    header.putInt(magic).putInt(version).putLong(statsChecksum).flip();
+    journal.truncate(0);
+    journal.position(0);
+    while (header.hasRemaining()) journal.write(header);
+    journal.force(false);
+  }
+
+  // Record a sample of the word at the given lesson index
+  void append(int word, long time, long duration) {
+    append(dictionary.getWordKey(word), time, duration);
+  }
+
+  synchronized void append(long key, long time, long duration) {
+    if (channel == null) return;
+    record.clear();
+    record.putLong(key).putLong(time).putLong(duration).flip();
+    try {
+      while (record.hasRemaining()) channel.write(record);
+      size += recordSize;
+      hasUnforcedRecords = true;
+    }
+    catch (IOException e) {
+      println("Warning: cannot write word stats journal, samples are only saved with the session. " + e.getMessage());
+      close();
+    }
+  }
+
+  // Record that all the stats were reset
+  void appendReset(long time) {
+    append(0L, time, -1);
+  }
+
+  // Force the records appended so far to disk. Called by the session saver,
+  // appending goes on meanwhile.
+  void force() {
+    FileChannel forced;
+    synchronized (this) {
+      if (channel == null || !hasUnforcedRecords) return;
+      forced = channel;
+      hasUnforcedRecords = false;
+    }
+    try {
+      forced.force(false);
+    }
+    catch (IOException e) {
+      // Closed by a compaction, which forced it
+    }
+  }
+
+  // If the journal grew too big, compact it
+  synchronized void compactIfNeeded(WordStatsStore wordStats) {
+    if (channel != null && !isCompacting && size >= compactionSize) compact(wordStats);
+  }
+
+  // Have the session saver write a copy of the given stats to the stats
+  // file and keep only the records appended since. If a compaction is
+  // already running, the copy replaces any one waiting for it to end.
+  synchronized void compact(WordStatsStore wordStats) {
+    if (isCompacting) {
+      pendingSnapshot = wordStats.copy();
+      pendingSnapshotEnd = size;
+      return;
+    }
+    isCompacting = true;
+    sessionSaver.saveStats(wordStats.copy(), size);
+  }
+
+  // Write the given stats, which include the records up to snapshotEnd, to
+  // the stats file, then replace the journal with one following it that holds
+  // the records appended since. Called by the session saver. Appending goes
+  // on meanwhile, except while the last few records are copied.
+  void compact(WordStatsStore snapshot, long snapshotEnd) {
+    File temp = new File(journalFilePath + ".tmp");
+    FileChannel journal = null;
+    try {
+      if (!new WordStatsFile(statsFilePath).save(snapshot)) return;
+      FileChannel current;
+      long copied;
+      synchronized (this) {
+        if (channel == null) return;
+        current = channel;
+        copied = size;
+      }
+      journal = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      start(journal, utils.checksum(new File(statsFilePath)));
+      copy(current, snapshotEnd, copied, journal);
+      journal.force(false);
+      synchronized (this) {
+        if (channel != current) return;
+        copy(current, copied, size, journal);
+        current.close();
+        Files.move(temp.toPath(), Paths.get(journalFilePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = journal;
+        size = journal.position();
+        journal = null;
+        hasUnforcedRecords = true;
+        // The records that stats waiting for this compaction include moved
+        // to the start of the new journal, right after its header
+        if (pendingSnapshot != null) pendingSnapshotEnd = headerSize + pendingSnapshotEnd - snapshotEnd;
+      }
+    }
+    catch (IOException e) {
+      println("Warning: cannot compact word stats journal, samples are only saved with the session. " + e.getMessage());
+      close();
+    }
+    finally {
+      synchronized (this) {
+        isCompacting = false;
+        if (pendingSnapshot != null) {
+          isCompacting = true;
+          sessionSaver.saveStats(pendingSnapshot, pendingSnapshotEnd);
+          pendingSnapshot = null;
+        }
+      }
+      try {
+        if (journal != null) journal.close();
+      }
+      catch (IOException e) {
+      }
+      temp.delete();
+    }
+  }
+
+  // Append the records of the given journal between two positions to another
+  void copy(FileChannel from, long start, long end, FileChannel to) throws IOException {
+    while (start < end) start += from.transferTo(start, end - start, to);
+  }
+
+  synchronized void close() {
+    try {
+      if (channel != null) channel.close();
+    }
+    catch (IOException e) {
+    }
+    channel = null;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ *   Modified 2017 David Rutter
+ */
+
+// This class stores the speed of every lesson word, and provides
+// utility methods to compute their penalty scores. The last samples of all
+// the words are kept in one array, each word owning averageSamples slots
+// used as a ring, and the sum and count of each ring and the penalty are
+// updated with every sample, so reading them never loops over samples.
+import java.util.Arrays;
+public class WordStatsStore {
+  int size;
+  int averageSamples;
+
+  // Typing times in milliseconds, -1 for a missing sample. The samples of
+  // word w are samples[w * averageSamples] onwards, the oldest one at
+  // nextSamples[w] if the ring is full.
+  long[] samples;
+  int[] nextSamples;
+
+  // Sum and count of the samples of each word that aren't missing
+  long[] sampleSums;
+  int[] sampleCounts;
+  long[] penalties;
+
+  public WordStatsStore(int size, int averageSamples) {
+    this.size = size;
+    this.averageSamples = averageSamples;
+    samples = new long[size * averageSamples];
+    nextSamples = new int[size];
+    sampleSums = new long[size];
+    sampleCounts = new int[size];
+    penalties = new long[size];
+    Arrays.fill(samples, -1);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // Independent copy of all the stats
+  public WordStatsStore copy() {
+    WordStatsStore copy = new WordStatsStore(0, averageSamples);
+    copy.size = size;
+    copy.samples = samples.clone();
+    copy.nextSamples = nextSamples.clone();
+    copy.sampleSums = sampleSums.clone();
+    copy.sampleCounts = sampleCounts.clone();
+    copy.penalties = penalties.clone();
+    return copy;
+  }
+
+  // Give the word a single low performance record, like a new word
+  public void reset(int word, int startAverageWpm) {
+    long time = (long) 60000.0 / startAverageWpm;
+    Arrays.fill(samples, word * averageSamples, (word + 1) * averageSamples, -1);
+    samples[(word + 1) * averageSamples - 1] = time;
+    nextSamples[word] = 0;
+    sampleSums[word] = time;
+    sampleCounts[word] = 1;
+    updatePenalty(word);
+  }
+
+  // Set the samples of a word, oldest first. Only the latest averageSamples
+  // are kept. A word without samples is reset.
+  public void setSamples(int word, long[] typeTime, int startAverageWpm) {
+    int start = word * averageSamples;
+    Arrays.fill(samples, start, start + averageSamples, -1);
+    System.arraycopy(typeTime, max(0, typeTime.length-averageSamples), samples, start + max(0, averageSamples-typeTime.length), min(averageSamples, typeTime.length));
+    nextSamples[word] = 0;
+    sampleSums[word] = 0;
+    sampleCounts[word] = 0;
+    for (int i = start; i < start + averageSamples; i++) {
+      if (samples[i] >= 0) {
+        sampleSums[word] += samples[i];
+        sampleCounts[word]++;
+      }
+    }
+    if (sampleCounts[word] == 0) {
+      reset(word, startAverageWpm);
+    } else {
+      updatePenalty(word);
+    }
+  }
+
+  // Compute the sums and penalties of all the words after their samples
+  // were set, oldest first. Words without samples are reset.
+  public void updateSums(int startAverageWpm) {
+    Arrays.fill(nextSamples, 0);
+    for (int word = 0; word < size; word++) {
+      long sum = 0;
+      int count = 0;
+      for (int i = word * averageSamples; i < (word + 1) * averageSamples; i++) {
+        if (samples[i] >= 0) {
+          sum += samples[i];
+          count++;
+        }
+      }
+      sampleSums[word] = sum;
+      sampleCounts[word] = count;
+      if (count == 0) {
+        reset(word, startAverageWpm);
+      } else {
+        updatePenalty(word);
+      }
+    }
+  }
+
+  public void addSample(int word, long time) {
+    int slot = word * averageSamples + nextSamples[word];
+    if (samples[slot] >= 0) {
+      sampleSums[word] -= samples[slot];
+      sampleCounts[word]--;
+    }
+    samples[slot] = time;
+    if (time >= 0) {
+      sampleSums[word] += time;
+      sampleCounts[word]++;
+    }
+    nextSamples[word] = (nextSamples[word] + 1) % averageSamples;
+    updatePenalty(word);
+  }
+
+  // The i-th sample of the given word, oldest first, -1 if missing
+  public long getSample(int word, int i) {
+    return samples[word * averageSamples + (nextSamples[word] + i) % averageSamples];
+  }
+
+  private long typeTimeSum(int word) {
+    return sampleSums[word]*this.averageSamples/sampleCounts[word]; //assume missing values are equal to mean
+  }
+
+  // Get average WPM for the given word
+  public float getAvgWpm(int word) {
+    return this.averageSamples * 1.0 / (this.typeTimeSum(word) / 60000.0);
+  }
+
+  // Number of the latest samples in a row typed within maxTime milliseconds
+  public int getFastStreak(int word, long maxTime) {
+    int streak = 0;
+    for (int i = averageSamples - 1; i >= 0; i--) {
+      long time = getSample(word, i);
+      if (time < 0 || time > maxTime) break;
+      streak++;
+    }
+    return streak;
+  }
+
+  // Return the word penalty score. In this version, only speed is
+  // taking into account
+  public long getWordPenalty(int word) {
+    return penalties[word];
+  }
+
+  void updatePenalty(int word) {
+    long timePenalty = this.typeTimeSum(word);
+    // The returned value is directly proportional to timePenalty^3
+    penalties[word] = timePenalty * timePenalty / 2000 * timePenalty;
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Caches the width of each lesson word as laid out in the target lines,
+// that is followed by a space, for a given font and size. Each word is
+// measured once however often it occurs in the lesson, the first time it
+// is laid out, which is usually while the next lines are built between
+// frames. Unlocking many words at once then costs nothing, and drawing
+// lines doesn't query font metrics or build strings again. Measuring sets
+// the font.
+public class WordWidths {
+  PFont font;
+  int size;
+  // Width of each distinct word, -1 until measured
+  float[] widths;
+  float spaceWidth;
+
+  WordWidths(int wordCount, PFont font, int size) {
+    widths = new float[wordCount];
+    setFont(font, size);
+  }
+
+  // Use the given font and size, forgetting the widths measured with others
+  void setFont(PFont font, int size) {
+    if (font == this.font && size == this.size) return;
+    this.font = font;
+    this.size = size;
+    Arrays.fill(widths, -1);
+    textFont(font, size);
+    spaceWidth = textWidth(' ');
+  }
+
+  // Measure the words in the given index range that aren't measured yet
+  void measure(int from, int to) {
+    boolean isFontSet = false;
+    for (int i = from; i < min(to, dictionary.size()); i++) {
+      int id = dictionary.getWordId(i);
+      if (widths[id] >= 0) continue;
+      if (!isFontSet) {
+        textFont(font, size);
+        isFontSet = true;
+      }
+      widths[id] = textWidth(dictionary.getWord(i).trim() + " ");
+    }
+  }
+
+  // Width of the word at the given lesson index followed by a space
+  float get(int index) {
+    int id = dictionary.getWordId(index);
+    if (widths[id] < 0) measure(index, index + 1);
+    return widths[id];
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Keeps track of the average WPM of the active words, so that the worst
+// word and whether any word is too slow to level up are known without
+// scanning the lesson after every typed word.
+public class WordWpmIndex {
+  // WPM of each active word, truncated like it is shown
+  MinMaxTree wpms;
+
+  // Active words below the minimum WPM required to level up
+  boolean[] slow;
+  int slowCount = 0;
+  int minLevelUpWpm;
+
+  WordWpmIndex(int size, int minLevelUpWpm) {
+    wpms = new MinMaxTree(size);
+    slow = new boolean[size];
+    this.minLevelUpWpm = minLevelUpWpm;
+  }
+
+  // Set the WPM of an active word
+  void set(int word, float wpm) {
+    wpms.set(word, (int) wpm);
+    setSlow(word, wpm < minLevelUpWpm);
+  }
+
+  // Forget a word that is no longer active
+  void clear(int word) {
+    wpms.clear(word);
+    setSlow(word, false);
+  }
+
+  void setSlow(int word, boolean isSlow) {
+    if (slow[word] == isSlow) return;
+    slow[word] = isSlow;
+    slowCount += isSlow ? 1 : -1;
+  }
+
+  // The active word with the lowest WPM, the first one on ties, or -1 if none
+  int worstWord() {
+    return wpms.minWord();
+  }
+
+  int getWpm(int word) {
+    return (int) wpms.get(word);
+  }
+}
@@ -22,9 +22,9 @@ public class WpmReporter extends Thread {
   long period;
 
   // Speech synthesis wrapper
-  TTS tts;
+  Future<TTS> tts;
 
-  WpmReporter(long period, TTS tts) {
+  WpmReporter(long period, Future<TTS> tts) {
     this.period = period;
     this.tts = tts;
   }